@@ -0,0 +1,319 @@
+//
+//
+// Benchmark
+//
+// Times the hot paths of the puzzle model -- parsing, building the Grid,
+// checking for a solution, working out and recoloring the clues, checking
+// the lines can still be finished, and solving lines from them with each
+// of the line solvers -- at 16x16, at the largest size we ship, and at a
+// synthetic 256x256 made by blowing up the largest puzzle.
+// Each case is warmed up before it is measured, and the results come out
+// one line per case so they can be compared from one release to the next.
+//
+// usage: java Benchmark [top of the source tree]
+//
+import java.awt.Color;
+import java.io.*;
+
+class Benchmark
+{
+	// how long to run each case for
+	static final int	WARMUP_ITERATIONS	= 5;
+	static final int	MEASURE_ITERATIONS	= 10;
+	static final long	ITERATION_NANOS		= 100 * 1000000L;
+
+	// the fixtures, relative to the top of the source tree
+	static final String	SMALL_XBM	= "pbn-bnw/16x16/bear.xbm";
+	static final String	LARGE_XBM	= "pbn-bnw/32x32/biplane.xbm";
+	static final String	SMALL_XPM	= "pbn-color/16x16/a-z.xpm";
+	static final String	LARGE_XPM	= "pbn-color/24x24/alarm.xpm";
+	static final int	HUGE_SIZE	= 256;
+
+	// somewhere to put results so that the work can't be optimized away
+	static volatile Object	s_sink;
+
+	//=========================================
+	// Internal class for one thing to be timed
+	//=========================================
+	static abstract class Case
+	{
+		String	m_name;
+
+		public Case( String name ) { m_name = name; }
+
+		// Do the work once, returning something that depends on it.
+		abstract Object run() throws Exception;
+
+		// Time one iteration, returning the number of nanoseconds per call.
+		double iteration() throws Exception {
+			long calls = 0;
+			long start = System.nanoTime();
+			long elapsed;
+			do {
+				s_sink = run();
+				calls++;
+				elapsed = System.nanoTime() - start;
+			} while ( elapsed < ITERATION_NANOS );
+			return (double)elapsed / calls;
+		}
+
+		void measure() throws Exception {
+			for ( int i=0; i<WARMUP_ITERATIONS; i++ )	iteration();
+
+			double sum = 0, sumSquares = 0;
+			for ( int i=0; i<MEASURE_ITERATIONS; i++ ) {
+				double t = iteration();
+				sum += t;
+				sumSquares += t*t;
+			}
+			double mean = sum / MEASURE_ITERATIONS;
+			double dev = Math.sqrt( Math.max(0,
+						sumSquares/MEASURE_ITERATIONS - mean*mean) );
+			System.out.println( m_name + "\t" + format(mean) + "\t+- " +
+								format(dev) + " ns/op" );
+		}
+	}
+
+	//=========================================
+	// Internal class for the fixtures at one size
+	//=========================================
+	static class Fixture
+	{
+		String		m_size;
+		String		m_xbmName;
+		byte		m_xbm[];
+		String		m_xpmName;
+		byte		m_xpm[];
+		Grid		m_grid;		// solved, so isSolved has to look at it all
+		Keyarray	m_rowKeys;
+
+		public Fixture( String size, String xbmName, byte xbm[],
+						String xpmName, byte xpm[] ) throws Exception {
+			m_size = size;
+			m_xbmName = xbmName;
+			m_xbm = xbm;
+			m_xpmName = xpmName;
+			m_xpm = xpm;
+			m_grid = new Grid( parse(xpmName, xpm), true );
+			m_rowKeys = new Keyarray( m_grid, true );
+		}
+	}
+
+	public static void main( String args[] ) throws Exception {
+		File top = new File( (args.length > 0) ? args[0] : ".." );
+
+		Fixture fixtures[] = new Fixture[3];
+		fixtures[0] = new Fixture( "16x16",
+			SMALL_XBM, readFile(new File(top, SMALL_XBM)),
+			SMALL_XPM, readFile(new File(top, SMALL_XPM)) );
+		fixtures[1] = new Fixture( "large",
+			LARGE_XBM, readFile(new File(top, LARGE_XBM)),
+			LARGE_XPM, readFile(new File(top, LARGE_XPM)) );
+
+		// Blow up the large pictures to make the synthetic ones.
+		Fixture large = fixtures[1];
+		Color xbmColors[][] = scale( parse(large.m_xbmName, large.m_xbm) );
+		Color xpmColors[][] = scale( parse(large.m_xpmName, large.m_xpm) );
+		fixtures[2] = new Fixture( HUGE_SIZE+"x"+HUGE_SIZE,
+			"huge.xbm", toXbm(xbmColors), "huge.xpm", toXpm(xpmColors) );
+
+		System.out.println( "# " + System.getProperty("java.vm.name") + " " +
+							System.getProperty("java.version") );
+		for ( int i=0; i<fixtures.length; i++ ) {
+			final Fixture f = fixtures[i];
+			final String size = f.m_size;
+
+			new Case( "Picture.makeXbmPicture\t" + size ) {
+				Object run() throws Exception {
+					return parse( f.m_xbmName, f.m_xbm );
+				}
+			}.measure();
+
+			new Case( "Picture.makeXpmPicture\t" + size ) {
+				Object run() throws Exception {
+					return parse( f.m_xpmName, f.m_xpm );
+				}
+			}.measure();
+
+			new Case( "Grid.<init>\t" + size ) {
+				final Color colors[][] = parse( f.m_xpmName, f.m_xpm );
+				Object run() {
+					return new Grid( colors, false );
+				}
+			}.measure();
+
+			new Case( "Grid.isSolved\t" + size ) {
+				Object run() {
+					return Boolean.valueOf( f.m_grid.isSolved() );
+				}
+			}.measure();
+
+			new Case( "Key.makeNumbers\t" + size ) {
+				final int numbers[] = new int[f.m_grid.getNumCols()];
+				final Color colors[] = new Color[f.m_grid.getNumCols()];
+				Object run() {
+					int total = 0;
+					Key keys[] = f.m_rowKeys.m_keys;
+					for ( int r=0; r<keys.length; r++ )
+						total += keys[r].makeNumbers( false, numbers, colors );
+					return Integer.valueOf( total );
+				}
+			}.measure();
+
+			new Case( "Key.setColors\t" + size ) {
+				Object run() {
+					Key keys[] = f.m_rowKeys.m_keys;
+					for ( int r=0; r<keys.length; r++ )
+						keys[r].setColors();
+					return keys;
+				}
+			}.measure();
+
+			// What Keyarray.setColors adds to that, for every row.
+			new Case( "Key.checkFeasible\t" + size ) {
+				final Color palette[] = ColorLineSolver.palette( f.m_grid );
+				final ColorLineSolver checker = new ColorLineSolver(
+					f.m_grid.getNumCols(), f.m_rowKeys.getMaxSize(), palette.length );
+				final byte masks[] = ColorLineSolver.masks( f.m_grid, palette );
+				final byte cells[] = new byte[f.m_grid.getNumCols()];
+				Object run() {
+					int total = 0;
+					Key keys[] = f.m_rowKeys.m_keys;
+					for ( int r=0; r<keys.length; r++ ) {
+						if ( keys[r].checkFeasible( checker, palette, masks, cells ) )
+							total++;
+					}
+					return Integer.valueOf( total );
+				}
+			}.measure();
+
+			// Every row of the color puzzle, from a blank board.
+			final int numCols = f.m_grid.getNumCols();
+			final int numColors = f.m_grid.getNumColors() - 1;
+			final int lens[][] = new int[f.m_grid.getNumRows()][];
+			final int colors[][] = new int[lens.length][];
+			final Color palette[] = ColorLineSolver.palette( f.m_grid );
+			for ( int r=0; r<lens.length; r++ ) {
+				lens[r] = f.m_rowKeys.getNumbers( r );
+				colors[r] = new int[lens[r].length];
+				for ( int j=0; j<lens[r].length; j++ )
+					colors[r][j] = ColorLineSolver.indexOf( palette,
+						f.m_rowKeys.getFgColor(r,j) );
+			}
+
+			new Case( "LineSolver.solve\t" + size ) {
+				final LineSolver solver = new LineSolver( numCols,
+					f.m_rowKeys.getMaxSize(), numColors );
+				final long cand[][] = new long[numColors][LineSolver.words(numCols)];
+				Object run() {
+					for ( int r=0; r<lens.length; r++ ) {
+						for ( int k=0; k<numColors; k++ )
+							LineSolver.setRange( cand[k], 0, numCols );
+						solver.solve( cand, numCols, lens[r], colors[r],
+									  lens[r].length );
+					}
+					return cand;
+				}
+			}.measure();
+
+			new Case( "ColorLineSolver.solve\t" + size ) {
+				final ColorLineSolver solver = new ColorLineSolver( numCols,
+					f.m_rowKeys.getMaxSize(), numColors );
+				final byte cells[] = new byte[numCols];
+				Object run() {
+					for ( int r=0; r<lens.length; r++ ) {
+						java.util.Arrays.fill( cells, (byte)((1 << numColors) - 1) );
+						solver.solve( cells, numCols, lens[r], colors[r],
+									  lens[r].length );
+					}
+					return cells;
+				}
+			}.measure();
+		}
+	}
+
+	// Private methods
+
+	static Color[][] parse( String name, byte data[] ) throws Exception {
+		return new Picture().read( name, new ByteArrayInputStream(data) );
+	}
+
+	static byte[] readFile( File file ) throws IOException {
+		DataInputStream in = new DataInputStream( new FileInputStream(file) );
+		try {
+			byte data[] = new byte[(int)file.length()];
+			in.readFully( data );
+			return data;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	// Blow a picture up to HUGE_SIZE squares on a side.
+	static Color[][] scale( Color colors[][] ) {
+		int numRows = colors.length, numCols = colors[0].length;
+		Color scaled[][] = new Color[HUGE_SIZE][HUGE_SIZE];
+		for ( int r=0; r<HUGE_SIZE; r++ ) {
+			for ( int c=0; c<HUGE_SIZE; c++ ) {
+				scaled[r][c] = colors[r*numRows/HUGE_SIZE][c*numCols/HUGE_SIZE];
+			}
+		}
+		return scaled;
+	}
+
+	// Write out a black-and-white picture in .xbm format.
+	static byte[] toXbm( Color colors[][] ) {
+		int numRows = colors.length, numCols = colors[0].length;
+		StringBuffer sb = new StringBuffer();
+		sb.append( "#define huge_width " + numCols + "\n" );
+		sb.append( "#define huge_height " + numRows + "\n" );
+		sb.append( "static unsigned char huge_bits[] = {\n" );
+		for ( int r=0; r<numRows; r++ ) {
+			for ( int c=0; c<numCols; c+=8 ) {
+				int x = 0;
+				for ( int b=0; b<8 && c+b<numCols; b++ ) {
+					if ( colors[r][c+b] == Color.black )	x |= 1 << b;
+				}
+				sb.append( "0x" + Integer.toHexString(0x100 | x).substring(1) +
+						   ", " );
+			}
+			sb.append( "\n" );
+		}
+		sb.append( "};\n" );
+		return sb.toString().getBytes();
+	}
+
+	// Write out a picture in .xpm format, using the colors that
+	// Picture knows about.
+	static byte[] toXpm( Color colors[][] ) {
+		final Color known[] =
+			{ Color.white, Color.black, Color.red, Color.green, Color.blue };
+		final String names[] =
+			{ "#ffffff", "#000000", "#ff0000", "#00ff00", "#0000ff" };
+		final String chars = ".abcd";
+
+		int numRows = colors.length, numCols = colors[0].length;
+		StringBuffer sb = new StringBuffer();
+		sb.append( "/* XPM */\nstatic char *huge[]={\n" );
+		sb.append( "\"" + numCols + " " + numRows + " " + known.length +
+				   " 1\",\n" );
+		for ( int i=0; i<known.length; i++ )
+			sb.append( "\"" + chars.charAt(i) + " c " + names[i] + "\",\n" );
+		for ( int r=0; r<numRows; r++ ) {
+			sb.append( "\"" );
+			for ( int c=0; c<numCols; c++ ) {
+				for ( int i=0; i<known.length; i++ ) {
+					if ( colors[r][c] == known[i] )	sb.append( chars.charAt(i) );
+				}
+			}
+			sb.append( "\",\n" );
+		}
+		sb.append( "};\n" );
+		return sb.toString().getBytes();
+	}
+
+	static String format( double nanos ) {
+		return Long.toString( Math.round(nanos) );
+	}
+}
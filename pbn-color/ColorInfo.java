@@ -18,6 +18,7 @@ public class ColorInfo
 
 		if		( m_bg == Color.white )		m_fg = Color.black;
 		else if ( m_bg == Color.lightGray )	m_fg = Color.black;
+		else if ( m_bg == XpmDecoder.LIGHT_GRAY )	m_fg = Color.black;
 		else								m_fg = Color.lightGray;
 	}
 
@@ -0,0 +1,281 @@
+//
+//
+// ColorLineSolver
+//
+// Solves a single row or column of a colored puzzle, like LineSolver, but
+// keeps the candidates as one small bitmask per square instead of one
+// bitset per color: bit k of a square is set if it can still be color k of
+// the palette.  The palette is the one the player picks from (see
+// PBN13.neededColors), without the gray of unguessed squares, so white is
+// always bit 0 and there can be at most MAX_COLORS colors in all.
+//
+// The rule is the one Key.makeNumbers uses to build the clues: two runs
+// of different colors may touch, but two runs of the same color need at
+// least one white square between them.
+//
+// Every place each run can legally sit is worked out from the left and
+// from the right, and any color that no legal placement gives a square is
+// taken away from it.  Whether a run fits at a spot is looked up in a
+// table of how far each color can stretch from each square, so the whole
+// line takes time proportional to its length times its number of runs,
+// however many colors there are.
+//
+// This class owns that working out, and so the adjacency rule.  The
+// placement tables only ever look at the stretch table, and LineSolver,
+// which keeps its candidates as a bitset per color for any number of
+// colors, fills the table in from those and uses the same tables.  Only
+// the byte-per-square entry points here are limited to MAX_COLORS.
+//
+import java.awt.Color;
+
+class ColorLineSolver
+{
+	// colors a square's bitmask can hold, white included
+	static final int	MAX_COLORS = 8;
+
+	// private variables
+	int		m_maxLen;
+	int		m_maxRuns;
+	int		m_numColors;
+
+	// scratch space, reused from line to line
+	int		m_stretch[][];	// [color][p]: squares from p on that can be color
+	int		m_stamp[];		// the line each color's stretch was worked out for
+	int		m_line;
+	boolean	m_fwdWhite[];	// prefix of j runs fits in [0,p), ends white
+	boolean	m_fwdEnd[];		// prefix of j runs fits in [0,p), run j-1 ends at p
+	boolean	m_bwdWhite[];	// runs j.. fit in [p,n), square p is white
+	boolean	m_bwdStart[];	// runs j.. fit in [p,n), run j starts at p
+	byte	m_out[];		// the new candidates
+
+	// constructor
+	// Any number of colors will do for LineSolver's use; only MAX_COLORS
+	// fit into the bytes taken by solve() and isFeasible().
+	public ColorLineSolver( int maxLen, int maxRuns, int numColors ) {
+		m_maxLen	= maxLen;
+		m_maxRuns	= maxRuns;
+		m_numColors	= numColors;
+
+		int size = (maxRuns+1) * (maxLen+1);
+		m_stretch	= new int[numColors][maxLen+1];
+		m_stamp		= new int[numColors];
+		m_fwdWhite	= new boolean[size];
+		m_fwdEnd	= new boolean[size];
+		m_bwdWhite	= new boolean[size];
+		m_bwdStart	= new boolean[size];
+		m_out		= new byte[maxLen];
+	}
+
+	// Narrow down the candidates for one line.  cells[p] is the bitmask of
+	// colors square p may be; it is updated in place.  colors[] are the
+	// runs' palette indexes.  Returns false if the line can't be completed.
+	public boolean solve( byte cells[], int n, int lens[], int colors[],
+						  int numRuns ) {
+
+		stretch( cells, n, colors, numRuns );
+		if ( !fillForward( n, lens, colors, numRuns ) )	return false;
+		fillBackward( n, lens, colors, numRuns );
+
+		for ( int p=0; p<n; p++ )	m_out[p] = 0;
+
+		// Every legal placement of every run colors the squares it covers.
+		for ( int j=0; j<numRuns; j++ ) {
+			int len = lens[j];
+			byte bit = (byte)(1 << colors[j]);
+			int reach = 0;
+			for ( int s=0; s+len<=n; s++ ) {
+				if ( !canStart( j, s, n, colors ) )	continue;
+				for ( int p=Math.max(s, reach); p<s+len; p++ )	m_out[p] |= bit;
+				reach = s+len;
+			}
+		}
+
+		// A square can be white if the runs can be split around it.
+		for ( int p=0; p<n; p++ ) {
+			if ( canBeWhite( p, n, numRuns ) )	m_out[p] |= 1;
+		}
+
+		// Copy the results back, making sure every square still has a color.
+		for ( int p=0; p<n; p++ ) {
+			cells[p] &= m_out[p];
+			if ( cells[p] == 0 )	return false;
+		}
+		return true;
+	}
+
+	// Can this line still be completed?  Only the forward pass is needed
+	// to tell.
+	public boolean isFeasible( byte cells[], int n, int lens[], int colors[],
+							   int numRuns ) {
+		stretch( cells, n, colors, numRuns );
+		return fillForward( n, lens, colors, numRuns );
+	}
+
+	// The palette to use for a puzzle: the colors the player picks from,
+	// leaving out the gray at the front.
+	static Color[] palette( ColorInfo needed[], int numNeeded ) {
+		Color palette[] = new Color[numNeeded-1];
+		for ( int k=1; k<numNeeded; k++ )	palette[k-1] = needed[k].bg();
+		return palette;
+	}
+
+	// The same, straight from a grid, for when there's no applet about.
+	static Color[] palette( Grid grid ) {
+		Color palette[] = new Color[grid.getNumColors()-1];
+		for ( int k=1; k<grid.getNumColors(); k++ )
+			palette[k-1] = grid.getPaletteColor( k );
+		return palette;
+	}
+
+	// Where a color is in a palette, or -1 if it isn't.
+	static int indexOf( Color palette[], Color color ) {
+		for ( int k=0; k<palette.length; k++ ) {
+			if ( palette[k] == color )	return k;
+		}
+		for ( int k=0; k<palette.length; k++ ) {
+			if ( color != null && color.equals(palette[k]) )	return k;
+		}
+		return -1;
+	}
+
+	// The bitmask for each of a grid's palette indexes: gray can be any
+	// color, anything else is just itself.
+	static byte[] masks( Grid grid, Color palette[] ) {
+		byte masks[] = new byte[grid.getNumColors()];
+		masks[Grid.UNSET] = (byte)((1 << palette.length) - 1);
+		for ( int i=0; i<masks.length; i++ ) {
+			int k = indexOf( palette, grid.getPaletteColor(i) );
+			if ( i != Grid.UNSET && k >= 0 )	masks[i] = (byte)(1 << k);
+		}
+		return masks;
+	}
+
+	// Our index for each of a grid's palette indexes, for palettes too big
+	// for masks(): -1 for gray, which can be any color.
+	static int[] indexes( Grid grid, Color palette[] ) {
+		int indexes[] = new int[grid.getNumColors()];
+		for ( int i=0; i<indexes.length; i++ )
+			indexes[i] = indexOf( palette, grid.getPaletteColor(i) );
+		indexes[Grid.UNSET] = -1;
+		return indexes;
+	}
+
+	// The placement tables, shared with LineSolver.  First one of the
+	// stretch() methods fills in the stretch table for white and for the
+	// colors of the runs; then fillForward() says whether the runs fit at
+	// all, and after fillBackward(), canStart() and canBeWhite() say where.
+
+	// How far each color can stretch from each square, so that whether a
+	// run fits somewhere is a single lookup.
+	void stretch( byte cells[], int n, int colors[], int numRuns ) {
+		m_line++;
+		for ( int j=-1; j<numRuns; j++ ) {
+			int k = ( j < 0 ) ? 0 : colors[j];
+			if ( m_stamp[k] == m_line )	continue;
+			m_stamp[k] = m_line;
+
+			int stretch[] = m_stretch[k];
+			stretch[n] = 0;
+			for ( int p=n-1; p>=0; p-- )
+				stretch[p] = ( (cells[p] & (1 << k)) != 0 ) ? stretch[p+1] + 1 : 0;
+		}
+	}
+
+	// The same, from a bitset per color.
+	void stretch( long cand[][], int n, int colors[], int numRuns ) {
+		m_line++;
+		for ( int j=-1; j<numRuns; j++ ) {
+			int k = ( j < 0 ) ? 0 : colors[j];
+			if ( m_stamp[k] == m_line )	continue;
+			m_stamp[k] = m_line;
+
+			int stretch[] = m_stretch[k];
+			long bits[] = cand[k];
+			stretch[n] = 0;
+			for ( int p=n-1; p>=0; p-- )
+				stretch[p] = ( LineSolver.get(bits, p) ) ? stretch[p+1] + 1 : 0;
+		}
+	}
+
+	// Can run j legally start at square s?
+	boolean canStart( int j, int s, int n, int colors[] ) {
+		int i = j*(n+1) + s;
+		if ( !m_bwdStart[i] )	return false;
+		return m_fwdWhite[i] ||
+			( j>0 && m_fwdEnd[i] && colors[j-1] != colors[j] );
+	}
+
+	// Can square p be white, with the runs split around it?
+	boolean canBeWhite( int p, int n, int numRuns ) {
+		if ( m_stretch[0][p] == 0 )	return false;
+		final int w = n+1;
+		for ( int j=0; j<=numRuns; j++ ) {
+			if ( (m_fwdWhite[j*w+p] || m_fwdEnd[j*w+p]) && m_bwdWhite[j*w+p] )
+				return true;
+		}
+		return false;
+	}
+
+	boolean fillForward( int n, int lens[], int colors[], int numRuns ) {
+		final int w = n+1;
+		int white[] = m_stretch[0];
+
+		// Forward: how many runs can be squeezed into the first p squares?
+		for ( int p=0; p<=n; p++ ) {
+			for ( int j=0; j<=numRuns; j++ ) {
+				int i = j*w+p;
+				if ( p == 0 ) {
+					m_fwdWhite[i] = (j == 0);
+					m_fwdEnd[i] = false;
+					continue;
+				}
+				m_fwdWhite[i] = white[p-1] > 0 &&
+					( m_fwdWhite[i-1] || m_fwdEnd[i-1] );
+
+				m_fwdEnd[i] = false;
+				if ( j > 0 ) {
+					int s = p - lens[j-1];
+					if ( s >= 0 && m_stretch[colors[j-1]][s] >= lens[j-1] ) {
+						int prev = (j-1)*w+s;
+						m_fwdEnd[i] = m_fwdWhite[prev] ||
+							( j > 1 && m_fwdEnd[prev] &&
+							  colors[j-2] != colors[j-1] );
+					}
+				}
+			}
+		}
+
+		int last = numRuns*w+n;
+		return m_fwdWhite[last] || m_fwdEnd[last];
+	}
+
+	void fillBackward( int n, int lens[], int colors[], int numRuns ) {
+		final int w = n+1;
+		int white[] = m_stretch[0];
+
+		// Backward: can the remaining runs fit from square p onwards?
+		for ( int p=n; p>=0; p-- ) {
+			for ( int j=numRuns; j>=0; j-- ) {
+				int i = j*w+p;
+				if ( p == n ) {
+					m_bwdWhite[i] = (j == numRuns);
+					m_bwdStart[i] = false;
+					continue;
+				}
+				m_bwdWhite[i] = white[p] > 0 &&
+					( m_bwdWhite[i+1] || m_bwdStart[i+1] );
+
+				m_bwdStart[i] = false;
+				if ( j < numRuns ) {
+					int e = p + lens[j];
+					if ( e <= n && m_stretch[colors[j]][p] >= lens[j] ) {
+						int next = (j+1)*w+e;
+						m_bwdStart[i] = m_bwdWhite[next] ||
+							( j+1 < numRuns && m_bwdStart[next] &&
+							  colors[j+1] != colors[j] );
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,382 @@
+//
+//
+// Generator
+//
+// Makes new puzzles out of ordinary pictures.  The picture (anything
+// javax.imageio can read, such as a .png or .jpg) is shrunk down to the
+// size of the puzzle, averaging the pixels that fall in each square, and
+// its colors are reduced to a few, white always being one of them for the
+// background.  The clues are built the same way as for any other puzzle,
+// by Keyarray, and the puzzle is only kept if it has only the one
+// solution.  Usually the Solver proves that by working it out from the
+// clues alone; those that line logic can't finish are searched for a
+// second solution, and kept too if there isn't one, but tagged as needing
+// search, since a player can't finish them by logic alone either.
+//
+// Each size and number of colors makes a different candidate.  They're
+// tried in parallel on a fork-join pool, and the ones that work are
+// written out as .xpm files, with "-search" on the end of the name of
+// those that need search.
+//
+// usage: java Generator picture out-dir [sizes] [colors]
+//	e.g.  java Generator cat.png 16x16 16,20,24 2,3,4
+//
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import javax.imageio.ImageIO;
+
+class Generator
+{
+	// the defaults, if the sizes and colors aren't given
+	static final int	SIZES[]		= { 16, 20, 24, 32 };
+	static final int	COLORS[]	= { 2, 3, 4, 5 };
+
+	// how many rounds to spend settling the palette
+	static final int	ROUNDS = 10;
+
+	// Colors closer than this (in each of red, green and blue) to one of
+	// the standard ones are turned into it.
+	static final int	SNAP = 48;
+
+	// how long to look for a second solution when line logic is stuck
+	static final long	SEARCH_MILLIS = 2000;
+
+	//=========================================
+	// Internal class for one candidate puzzle
+	//=========================================
+	static class Candidate
+	{
+		int		m_numRows;
+		int		m_numCols;
+		int		m_numColors;	// asked for, counting white
+
+		Color	m_colors[][];	// the puzzle, once it's made
+		Color	m_palette[];
+		int		m_result = -1;	// from Solver.solve()
+		int		m_passes;
+		int		m_search = -1;	// from Solver.searchUnique(), if it was stuck
+
+		public Candidate( int numRows, int numCols, int numColors ) {
+			m_numRows = numRows;
+			m_numCols = numCols;
+			m_numColors = numColors;
+		}
+
+		public boolean isUnique()	{ return m_result == Solver.SOLVED || needsSearch(); }
+		public boolean needsSearch()	{ return m_search == Solver.SOLVED; }
+
+		public String getName() {
+			return m_numCols + "x" + m_numRows + "-" + m_numColors + "c";
+		}
+
+		public String toString() {
+			String status = ( m_result == Solver.SOLVED ) ? "unique" :
+				( m_search == Solver.MULTIPLE ) ? "not-unique" :
+				( m_search == Solver.SOLVED ) ? "unique-needs-search" :
+				( m_result == Solver.STUCK ) ? "not-unique-or-too-hard" :
+				( m_result == Solver.CONTRADICTION ) ? "bad-clues" : "failed";
+			return status + "\t" + getName() + "\t" +
+				((m_palette == null) ? 0 : m_palette.length) + " colors\t" +
+				m_passes + " passes";
+		}
+	}
+
+	//===================================================
+	// Internal class for making a range of candidates
+	//===================================================
+	static class MakeTask extends RecursiveAction
+	{
+		Generator	m_generator;
+		Candidate	m_candidates[];
+		int			m_from, m_to;
+
+		public MakeTask( Generator generator, Candidate candidates[],
+						 int from, int to ) {
+			m_generator = generator;
+			m_candidates = candidates;
+			m_from = from;
+			m_to = to;
+		}
+
+		protected void compute() {
+			if ( m_to - m_from <= 1 ) {
+				if ( m_from < m_to )	m_generator.make( m_candidates[m_from] );
+				return;
+			}
+			int mid = (m_from + m_to) >>> 1;
+			invokeAll( new MakeTask( m_generator, m_candidates, m_from, mid ),
+					   new MakeTask( m_generator, m_candidates, mid, m_to ) );
+		}
+	}
+
+	// private variables
+	int		m_width;
+	int		m_height;
+	int		m_pixels[];		// RGB, row by row, flattened onto white
+
+	// constructor
+	public Generator( BufferedImage image ) {
+		m_width = image.getWidth();
+		m_height = image.getHeight();
+		m_pixels = image.getRGB( 0, 0, m_width, m_height, null, 0, m_width );
+
+		// Anything see-through counts as background.
+		for ( int i=0; i<m_pixels.length; i++ ) {
+			int argb = m_pixels[i];
+			int a = argb >>> 24;
+			int rgb = 0;
+			for ( int shift=16; shift>=0; shift-=8 ) {
+				int v = (argb >>> shift) & 0xff;
+				rgb |= ((v*a + 255*(255-a)) / 255) << shift;
+			}
+			m_pixels[i] = rgb;
+		}
+	}
+
+	// methods
+
+	// A candidate of a given size (the longer side), keeping the shape of
+	// the picture.
+	public Candidate candidate( int size, int numColors ) {
+		if ( m_width >= m_height )
+			return new Candidate( Math.max(1, Math.round( (float)size*m_height/m_width )),
+								  size, numColors );
+		else
+			return new Candidate( size,
+								  Math.max(1, Math.round( (float)size*m_width/m_height )),
+								  numColors );
+	}
+
+	// Shrink, reduce the colors, build the clues and try to solve them.
+	public void make( Candidate cand ) {
+		int rgb[] = shrink( cand.m_numRows, cand.m_numCols );
+		cand.m_palette = choosePalette( rgb, cand.m_numColors );
+
+		cand.m_colors = new Color[cand.m_numRows][cand.m_numCols];
+		for ( int r=0, i=0; r<cand.m_numRows; r++ ) {
+			for ( int c=0; c<cand.m_numCols; c++, i++ )
+				cand.m_colors[r][c] = cand.m_palette[ nearest(cand.m_palette, rgb[i]) ];
+		}
+
+		Grid grid = new Grid( cand.m_colors, false );
+		try {
+			Solver solver = new Solver( new Keyarray(grid, true),
+										new Keyarray(grid, false) );
+			cand.m_result = solver.solve();
+			cand.m_passes = solver.getPasses();
+			if ( cand.m_result == Solver.STUCK )
+				cand.m_search = solver.searchUnique( SEARCH_MILLIS );
+		}
+		catch ( RuntimeException e ) {
+			cand.m_result = -1;
+		}
+	}
+
+	// Write a puzzle out as an .xpm file.
+	public static void writeXpm( Color colors[][], Color palette[], String name,
+								 OutputStream os ) throws IOException {
+		final String chars =
+			".abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+		if ( palette.length > chars.length() )
+			throw new IOException( "too many colors for an .xpm" );
+
+		int numRows = colors.length, numCols = colors[0].length;
+		StringBuffer sb = new StringBuffer();
+		sb.append( "/* XPM */\nstatic char *" + name + "[]={\n" );
+		sb.append( "\"" + numCols + " " + numRows + " " + palette.length +
+				   " 1\",\n" );
+		for ( int k=0; k<palette.length; k++ ) {
+			String hex = Integer.toHexString(
+				0x1000000 | (palette[k].getRGB() & 0xffffff) ).substring(1);
+			sb.append( "\"" + chars.charAt(k) + " c #" + hex + "\",\n" );
+		}
+		for ( int r=0; r<numRows; r++ ) {
+			sb.append( "\"" );
+			for ( int c=0; c<numCols; c++ ) {
+				int k = 0;
+				while ( palette[k] != colors[r][c] )	k++;
+				sb.append( chars.charAt(k) );
+			}
+			sb.append( (r < numRows-1) ? "\",\n" : "\"\n" );
+		}
+		sb.append( "};\n" );
+		os.write( sb.toString().getBytes("ISO-8859-1") );
+	}
+
+	// Private methods
+
+	// Average the pixels that fall in each square.
+	private int[] shrink( int numRows, int numCols ) {
+		int rgb[] = new int[numRows * numCols];
+		for ( int r=0, i=0; r<numRows; r++ ) {
+			int y0 = r * m_height / numRows;
+			int y1 = Math.max( y0+1, (r+1) * m_height / numRows );
+			for ( int c=0; c<numCols; c++, i++ ) {
+				int x0 = c * m_width / numCols;
+				int x1 = Math.max( x0+1, (c+1) * m_width / numCols );
+				long red = 0, green = 0, blue = 0;
+				for ( int y=y0; y<y1; y++ ) {
+					for ( int x=x0, p=y*m_width+x0; x<x1; x++, p++ ) {
+						int v = m_pixels[p];
+						red += (v >>> 16) & 0xff;
+						green += (v >>> 8) & 0xff;
+						blue += v & 0xff;
+					}
+				}
+				long n = (long)(y1-y0) * (x1-x0);
+				rgb[i] = (int)(red/n) << 16 | (int)(green/n) << 8 | (int)(blue/n);
+			}
+		}
+		return rgb;
+	}
+
+	// Pick a palette of (at most) numColors colors, white first, by
+	// k-means: start from the colors furthest from those already picked,
+	// then move each one to the middle of the squares nearest to it.
+	private static Color[] choosePalette( int rgb[], int numColors ) {
+		int centers[] = new int[numColors];
+		centers[0] = 0xffffff;
+		for ( int k=1; k<numColors; k++ ) {
+			int best = 0, bestDistance = -1;
+			for ( int i=0; i<rgb.length; i++ ) {
+				int d = distance( rgb[i], centers[ nearest(centers, k, rgb[i]) ] );
+				if ( d > bestDistance ) { best = rgb[i]; bestDistance = d; }
+			}
+			centers[k] = best;
+		}
+
+		long sums[][] = new long[numColors][4];
+		for ( int round=0; round<ROUNDS; round++ ) {
+			for ( int k=0; k<numColors; k++ )	Arrays.fill( sums[k], 0 );
+			for ( int i=0; i<rgb.length; i++ ) {
+				long sum[] = sums[ nearest(centers, numColors, rgb[i]) ];
+				sum[0] += (rgb[i] >>> 16) & 0xff;
+				sum[1] += (rgb[i] >>> 8) & 0xff;
+				sum[2] += rgb[i] & 0xff;
+				sum[3]++;
+			}
+			for ( int k=1; k<numColors; k++ ) {		// white stays put
+				long n = sums[k][3];
+				if ( n == 0 )	continue;
+				centers[k] = (int)(sums[k][0]/n) << 16 |
+					(int)(sums[k][1]/n) << 8 | (int)(sums[k][2]/n);
+			}
+		}
+
+		// Snap to the standard colors, and drop any that end up the same.
+		Vector palette = new Vector();
+		for ( int k=0; k<numColors; k++ ) {
+			Color color = snap( centers[k] );
+			if ( !palette.contains(color) )	palette.addElement( color );
+		}
+		Color result[] = new Color[palette.size()];
+		palette.copyInto( result );
+		return result;
+	}
+
+	// The standard color close to this one, if there is one.  (Light gray
+	// isn't among them, and canonical() moves it off the grid's unset gray.)
+	private static Color snap( int rgb ) {
+		for ( int i=0; i<XpmDecoder.s_colors.length; i++ ) {
+			int standard = XpmDecoder.s_colors[i].getRGB() & 0xffffff;
+			boolean close = true;
+			for ( int shift=16; shift>=0; shift-=8 ) {
+				int d = ((rgb >>> shift) & 0xff) - ((standard >>> shift) & 0xff);
+				if ( Math.abs(d) > SNAP )	close = false;
+			}
+			if ( close )	return XpmDecoder.s_colors[i];
+		}
+		return XpmDecoder.canonical( new Color(rgb) );
+	}
+
+	private static int nearest( int centers[], int n, int rgb ) {
+		int best = 0, bestDistance = Integer.MAX_VALUE;
+		for ( int k=0; k<n; k++ ) {
+			int d = distance( rgb, centers[k] );
+			if ( d < bestDistance ) { best = k; bestDistance = d; }
+		}
+		return best;
+	}
+
+	private static int nearest( Color palette[], int rgb ) {
+		int best = 0, bestDistance = Integer.MAX_VALUE;
+		for ( int k=0; k<palette.length; k++ ) {
+			int d = distance( rgb, palette[k].getRGB() & 0xffffff );
+			if ( d < bestDistance ) { best = k; bestDistance = d; }
+		}
+		return best;
+	}
+
+	private static int distance( int a, int b ) {
+		int d = 0;
+		for ( int shift=16; shift>=0; shift-=8 ) {
+			int x = ((a >>> shift) & 0xff) - ((b >>> shift) & 0xff);
+			d += x*x;
+		}
+		return d;
+	}
+
+	private static int[] parseList( String s ) {
+		String parts[] = s.split( "," );
+		int list[] = new int[parts.length];
+		for ( int i=0; i<parts.length; i++ )
+			list[i] = Integer.parseInt( parts[i].trim() );
+		return list;
+	}
+
+	public static void main( String args[] ) throws IOException {
+		if ( args.length < 2 ) {
+			System.out.println( "usage: java Generator picture out-dir [sizes] [colors]" );
+			return;
+		}
+		File in = new File( args[0] );
+		File outDir = new File( args[1] );
+		int sizes[] = ( args.length > 2 ) ? parseList( args[2] ) : SIZES;
+		int colors[] = ( args.length > 3 ) ? parseList( args[3] ) : COLORS;
+
+		BufferedImage image = ImageIO.read( in );
+		if ( image == null )	throw new IOException( "can't read " + in );
+		Generator generator = new Generator( image );
+
+		Candidate candidates[] = new Candidate[sizes.length * colors.length];
+		for ( int i=0, n=0; i<sizes.length; i++ ) {
+			for ( int j=0; j<colors.length; j++ )
+				candidates[n++] = generator.candidate( sizes[i], colors[j] );
+		}
+
+		long start = System.nanoTime();
+		ForkJoinPool pool =
+			new ForkJoinPool( Runtime.getRuntime().availableProcessors() );
+		pool.invoke( new MakeTask( generator, candidates, 0, candidates.length ) );
+		long millis = (System.nanoTime() - start) / 1000000;
+
+		// Write out the ones that worked.
+		String base = in.getName().replaceFirst( "\\.[^.]*$", "" )
+			.replaceAll( "[^A-Za-z0-9_]", "_" );
+		outDir.mkdirs();
+		int written = 0;
+		for ( int i=0; i<candidates.length; i++ ) {
+			Candidate cand = candidates[i];
+			System.out.println( cand );
+			if ( !cand.isUnique() )	continue;
+			String name = base + "-" + cand.getName() +
+				( cand.needsSearch() ? "-search" : "" );
+			File out = new File( outDir, name + ".xpm" );
+			OutputStream os = new BufferedOutputStream( new FileOutputStream(out) );
+			try {
+				writeXpm( cand.m_colors, cand.m_palette, base, os );
+			}
+			finally {
+				os.close();
+			}
+			written++;
+		}
+		System.out.println( written + " of " + candidates.length +
+							" candidates written in " + millis + "ms on " +
+							pool.getParallelism() + " threads" );
+	}
+}
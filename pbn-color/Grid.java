@@ -5,43 +5,85 @@
 //
 import java.awt.Color;
 
-class Grid 
+class Grid
 {
-	// nested class to define one square of the grid
-	class Square
-	{
-		// variables
-		Color m_hiddenColor;
-		Color m_visibleColor;
-
-		// constructor
-		public Square() { m_visibleColor = Color.lightGray; }
-
-		// methods
-		public void	setHiddenColor (Color newColor) { m_hiddenColor=newColor; }
-		public void	setVisibleColor(Color newColor) { m_visibleColor=newColor;}
-		public Color	getHiddenColor	()			{ return m_hiddenColor; }
-		public Color	getVisibleColor	()			{ return m_visibleColor; }
-		public boolean isSolved	() { return (m_hiddenColor==m_visibleColor); }
-	}
-
+	// palette indexes that every grid has
+	static final int UNSET = 0;		// lightGray, for squares not yet guessed
+	static final int WHITE = 1;
 
 	// private variables
 	int m_numRows;
 	int m_numCols;
-	Square m_squares[][];
+
+	// The squares are kept as two planes of palette indexes, one byte per
+	// square, row by row.  The palette holds the actual Color objects.
+	Color m_palette[];
+	int m_numColors;
+	byte m_hidden[];
+	byte m_visible[];
+
+	// How many squares don't yet match the hidden picture, in all, and in
+	// each row and column.  These are kept up to date by setVisibleColor.
+	int m_numWrong;
+	int m_rowWrong[];
+	int m_colWrong[];
 
 	// constructor
 	public Grid( Color colors[][], boolean presolved) {
 		m_numRows = colors.length;
 		m_numCols = colors[0].length;
-		m_squares = new Square[m_numRows][m_numCols];
-		for ( int r=0; r<m_numRows; r++ ) {
-			for ( int c=0; c<m_numCols; c++ ) {
-				m_squares[r][c] = new Square();
-				m_squares[r][c].setHiddenColor( colors[r][c] );
-				if ( presolved )
-					m_squares[r][c].setVisibleColor( colors[r][c] );
+
+		m_palette = new Color[8];
+		m_palette[m_numColors++] = Color.lightGray;
+		m_palette[m_numColors++] = Color.white;
+
+		m_hidden = new byte[m_numRows * m_numCols];
+		Color lastColor = Color.white;
+		int lastIndex = WHITE;
+		for ( int r=0,i=0; r<m_numRows; r++ ) {
+			for ( int c=0; c<m_numCols; c++,i++ ) {
+				if ( colors[r][c] != lastColor ) {
+					lastColor = colors[r][c];
+					lastIndex = paletteIndex( lastColor );
+				}
+				m_hidden[i] = (byte)lastIndex;
+			}
+		}
+
+		setUp( presolved );
+	}
+
+	// Build a grid straight from a palette and a plane of indexes into it,
+	// as saved by getPaletteColor and getHiddenPlane.  The palette has to
+	// start with lightGray and white.  The plane is used, not copied.
+	public Grid( int numRows, int numCols, Color palette[], int numColors,
+				 byte hidden[], boolean presolved ) {
+		m_numRows = numRows;
+		m_numCols = numCols;
+
+		m_palette = new Color[Math.max(8, numColors)];
+		System.arraycopy( palette, 0, m_palette, 0, numColors );
+		m_numColors = numColors;
+		m_hidden = hidden;
+
+		setUp( presolved );
+	}
+
+	// Fill in the visible plane and the counts of wrong squares.
+	private void setUp( boolean presolved ) {
+		m_visible = new byte[m_numRows * m_numCols];
+		if ( presolved )
+			System.arraycopy( m_hidden, 0, m_visible, 0, m_visible.length );
+
+		m_rowWrong = new int[m_numRows];
+		m_colWrong = new int[m_numCols];
+		for ( int r=0,i=0; r<m_numRows; r++ ) {
+			for ( int c=0; c<m_numCols; c++,i++ ) {
+				if ( m_hidden[i] != m_visible[i] ) {
+					m_numWrong++;
+					m_rowWrong[r]++;
+					m_colWrong[c]++;
+				}
 			}
 		}
 	}
@@ -51,25 +93,68 @@ class Grid
 	public int getNumCols() { return m_numCols; }
 
 	public void setVisibleColor( int row, int col, Color newColor ) {
-		m_squares[row][col].setVisibleColor( newColor );
+		setVisibleIndex( row, col, paletteIndex(newColor) );
+	}
+
+	// The same, with the color given as a palette index.
+	public void setVisibleIndex( int row, int col, int k ) {
+		int i = row*m_numCols + col;
+		byte newIndex = (byte)k;
+		boolean wasWrong = ( m_visible[i] != m_hidden[i] );
+		boolean isWrong = ( newIndex != m_hidden[i] );
+		m_visible[i] = newIndex;
+
+		if ( wasWrong == isWrong )	return;
+		int delta = ( isWrong ) ? 1 : -1;
+		m_numWrong += delta;
+		m_rowWrong[row] += delta;
+		m_colWrong[col] += delta;
 	}
 
 	public Color getVisibleColor( int row, int col ) {
-		return m_squares[row][col].getVisibleColor();
+		return m_palette[ m_visible[row*m_numCols + col] & 0xff ];
+	}
+
+	public int getVisibleIndex( int row, int col ) {
+		return m_visible[row*m_numCols + col] & 0xff;
 	}
 
 	public Color getHiddenColor( int row, int col ) {
-		return m_squares[row][col].getHiddenColor();
+		return m_palette[ m_hidden[row*m_numCols + col] & 0xff ];
 	}
 
-	public boolean isSolved() {
-		// if any square is not solved then the puzzle is not solved
-		for ( int r=0; r<m_numRows; r++ ) {
-			for ( int c=0; c<m_numCols; c++ ) {
-				if ( !m_squares[r][c].isSolved() )	return false;
-			}
+	public boolean isSolved()			{ return m_numWrong == 0; }
+	public boolean isRowSolved( int row ) { return m_rowWrong[row] == 0; }
+	public boolean isColSolved( int col ) { return m_colWrong[col] == 0; }
+
+	// How many squares are still wrong.
+	public int getNumWrong()			{ return m_numWrong; }
+	public int getRowWrong( int row )	{ return m_rowWrong[row]; }
+	public int getColWrong( int col )	{ return m_colWrong[col]; }
+
+	// The palette, and the raw planes of indexes into it.
+	public int		getNumColors()			{ return m_numColors; }
+	public Color	getPaletteColor( int k ) { return m_palette[k]; }
+	public byte[]	getHiddenPlane()		{ return m_hidden; }
+	public byte[]	getVisiblePlane()		{ return m_visible; }
+
+	// Find a color in the palette, adding it if it isn't there yet.
+	public int paletteIndex( Color color ) {
+		for ( int k=0; k<m_numColors; k++ ) {
+			if ( m_palette[k] == color )	return k;
+		}
+		for ( int k=0; k<m_numColors; k++ ) {
+			if ( color != null && color.equals(m_palette[k]) )	return k;
+		}
+		if ( m_numColors == 256 )
+			throw new IllegalArgumentException( "more than 256 colors" );
+		if ( m_numColors == m_palette.length ) {
+			Color bigger[] = new Color[m_numColors*2];
+			System.arraycopy( m_palette, 0, bigger, 0, m_numColors );
+			m_palette = bigger;
 		}
-		return true;
+		m_palette[m_numColors] = color;
+		return m_numColors++;
 	}
 
 }
@@ -0,0 +1,475 @@
+//
+//
+// HintEngine
+//
+// Works out what the player could fill in next, from the squares they've
+// drawn so far and the clues -- never from the hidden picture.  Gray
+// squares can be any color; every other square is taken to be the color
+// it's been drawn.  Lines are solved one at a time, in the palette the
+// player picks from, and what each one rules out is passed on to the lines
+// that cross it, until some line pins down a square that's still gray.
+// That line, and the squares it forces, are the hint.
+//
+// The candidates are kept as a bitset per color, which works for any
+// number of colors.  Each line is handed to the ColorLineSolver, one byte
+// per square, when the palette fits in that, and to the LineSolver when it
+// doesn't.
+//
+// If a line can't be completed at all as drawn, that's the hint instead:
+// the player has made a mistake in it (or in a line that crosses it).
+//
+// What's been worked out is kept from one hint to the next.  The board is
+// only read where squaresChanged() says it has changed: a gray square that
+// has been drawn just narrows down its row and column, which are solved
+// again along with whatever that affects, and the rest of the board is
+// left alone.  Only a square that's been erased or drawn over (which can
+// undo what was worked out from it) means reading the whole board again.
+//
+// Solving a line depends only on its clue and on what its squares can be,
+// so the results are remembered by those, and lines that are solved again
+// as they were before are just looked up.
+//
+import java.awt.Color;
+import java.util.*;
+
+class HintEngine
+{
+	// how many line results to remember
+	static final int CACHE_SIZE = 8192;
+
+	//=========================================
+	// Internal class for a hint
+	//=========================================
+	static class Hint
+	{
+		boolean	m_forRow;
+		int		m_index;
+		int		m_squares[];	// along the line
+		Color	m_colors[];		// what each of them has to be
+		boolean	m_impossible;	// the line can't be completed as drawn
+
+		public Hint( boolean forRow, int index, int squares[], Color colors[],
+					 boolean impossible ) {
+			m_forRow = forRow;
+			m_index = index;
+			m_squares = squares;
+			m_colors = colors;
+			m_impossible = impossible;
+		}
+
+		public boolean	forRow()		{ return m_forRow; }
+		public int		getIndex()		{ return m_index; }
+		public int		getNumSquares()	{ return m_squares.length; }
+		public int		getSquare( int i )	{ return m_squares[i]; }
+		public Color	getColor( int i )	{ return m_colors[i]; }
+		public boolean	isImpossible()	{ return m_impossible; }
+
+		public int getRow( int i )	{ return ( m_forRow ) ? m_index : m_squares[i]; }
+		public int getCol( int i )	{ return ( m_forRow ) ? m_squares[i] : m_index; }
+
+		public String toString() {
+			String line = (( m_forRow ) ? "row " : "column ") + (m_index+1);
+			if ( m_impossible )	return line + " can't be finished as drawn";
+			String s = line + " forces";
+			for ( int i=0; i<m_squares.length; i++ )
+				s += " " + (m_squares[i]+1) + "=" + colorName( m_colors[i] );
+			return s;
+		}
+	}
+
+	//=========================================
+	// Internal class for a line to be looked up
+	//=========================================
+	static class LineKey
+	{
+		int		m_clue[];
+		long	m_cand[];
+		int		m_length;		// how much of m_cand is the line
+		int		m_hash;
+
+		public LineKey( int clue[], long cand[], int length ) {
+			set( clue, cand, length );
+		}
+
+		// Point the key at another line, so that one key can be used for
+		// every lookup.
+		public void set( int clue[], long cand[], int length ) {
+			m_clue = clue;
+			m_cand = cand;
+			m_length = length;
+			int hash = Arrays.hashCode( clue );
+			for ( int i=0; i<length; i++ )	hash = hash*31 + Long.hashCode( cand[i] );
+			m_hash = hash;
+		}
+
+		// A key of its own, to keep in the cache.
+		public LineKey copy() {
+			return new LineKey( m_clue, Arrays.copyOf(m_cand, m_length), m_length );
+		}
+
+		public int hashCode()	{ return m_hash; }
+
+		public boolean equals( Object o ) {
+			if ( !(o instanceof LineKey) )	return false;
+			LineKey key = (LineKey)o;
+			return m_hash == key.m_hash && m_length == key.m_length &&
+				Arrays.equals( m_cand, 0, m_length, key.m_cand, 0, m_length ) &&
+				Arrays.equals( m_clue, key.m_clue );
+		}
+	}
+
+	// stands for a line that can't be completed, in the cache
+	static final long	IMPOSSIBLE[] = new long[0];
+
+	// private variables
+	Grid	m_grid;
+	int		m_numRows;
+	int		m_numCols;
+	Color	m_palette[];		// index 0 is white
+	int		m_numColors;
+	int		m_indexes[];		// our color for each grid palette index
+	int		m_numGridColors;	// in the grid when m_indexes was made
+
+	int		m_rowLens[][];		// the clues, with colors as our indexes
+	int		m_rowColors[][];
+	int		m_colLens[][];
+	int		m_colColors[][];
+	int		m_rowClues[][];		// the same, packed, for the cache
+	int		m_colClues[][];
+
+	long	m_rows[][][];		// [row][color][word] candidates
+	long	m_cols[][][];		// [col][color][word] candidates
+	boolean	m_rowDirty[];
+	boolean	m_colDirty[];
+
+	// The board as it was last read, and the squares that have changed
+	// since: the rows, and a range of columns in each.
+	byte	m_seen[];
+	int		m_changedRows[];
+	int		m_numChangedRows;
+	int		m_changedFrom[];
+	int		m_changedTo[];		// 0 if the row hasn't changed
+
+	LineSolver		m_lineSolver;
+	ColorLineSolver	m_colorSolver;	// null if there are too many colors
+	long	m_before[][];		// scratch copy of a line before solving
+	long	m_flat[];			// scratch, the same all in one, for the cache
+	LineKey	m_probe;			// scratch, for looking lines up
+	int		m_squares[];		// scratch, the squares a line forces
+	byte	m_cells[];			// scratch, a line for the ColorLineSolver
+	LinkedHashMap	m_cache;
+	long	m_hits;
+	long	m_misses;
+
+	// constructor
+	public HintEngine( Grid grid, Keyarray rowKeys, Keyarray colKeys,
+					   Color palette[] ) {
+		m_grid = grid;
+		m_numRows = grid.getNumRows();
+		m_numCols = grid.getNumCols();
+		m_palette = palette;
+		m_numColors = palette.length;
+		m_indexes = ColorLineSolver.indexes( grid, palette );
+		m_numGridColors = grid.getNumColors();
+
+		m_rowLens	= new int[m_numRows][];
+		m_rowColors	= new int[m_numRows][];
+		m_rowClues	= new int[m_numRows][];
+		m_colLens	= new int[m_numCols][];
+		m_colColors	= new int[m_numCols][];
+		m_colClues	= new int[m_numCols][];
+		int maxRuns = 0;
+		for ( int r=0; r<m_numRows; r++ ) {
+			readClue( rowKeys, r, m_rowLens, m_rowColors, m_rowClues );
+			maxRuns = Math.max( maxRuns, m_rowLens[r].length );
+		}
+		for ( int c=0; c<m_numCols; c++ ) {
+			readClue( colKeys, c, m_colLens, m_colColors, m_colClues );
+			maxRuns = Math.max( maxRuns, m_colLens[c].length );
+		}
+
+		m_rows = new long[m_numRows][m_numColors][LineSolver.words(m_numCols)];
+		m_cols = new long[m_numCols][m_numColors][LineSolver.words(m_numRows)];
+		m_rowDirty = new boolean[m_numRows];
+		m_colDirty = new boolean[m_numCols];
+
+		int maxLen = Math.max( m_numRows, m_numCols );
+		m_lineSolver = new LineSolver( maxLen, maxRuns, m_numColors );
+		if ( m_numColors <= ColorLineSolver.MAX_COLORS ) {
+			m_colorSolver = new ColorLineSolver( maxLen, maxRuns, m_numColors );
+			m_cells = new byte[maxLen];
+		}
+		m_before = new long[m_numColors][LineSolver.words(maxLen)];
+		m_flat = new long[m_numColors * LineSolver.words(maxLen)];
+		m_probe = new LineKey( new int[0], m_flat, 0 );
+		m_squares = new int[maxLen];
+
+		m_cache = new LinkedHashMap( 256, 0.75f, true ) {
+			protected boolean removeEldestEntry( Map.Entry eldest ) {
+				return size() > CACHE_SIZE;
+			}
+		};
+
+		m_seen = (byte[])grid.getVisiblePlane().clone();
+		m_changedRows = new int[m_numRows];
+		m_changedFrom = new int[m_numRows];
+		m_changedTo = new int[m_numRows];
+		readBoard();
+	}
+
+	// methods
+	public long getHits()	{ return m_hits; }
+	public long getMisses()	{ return m_misses; }
+
+	// Note that some squares have been drawn, erased or drawn over since
+	// the last hint.
+	public void squaresChanged( int minRow, int maxRow, int minCol, int maxCol ) {
+		for ( int r=minRow; r<=maxRow; r++ ) {
+			if ( m_changedTo[r] == 0 ) {
+				m_changedRows[m_numChangedRows++] = r;
+				m_changedFrom[r] = minCol;
+				m_changedTo[r] = maxCol+1;
+			}
+			else {
+				m_changedFrom[r] = Math.min( m_changedFrom[r], minCol );
+				m_changedTo[r] = Math.max( m_changedTo[r], maxCol+1 );
+			}
+		}
+	}
+
+	// Find the next hint for the board as it is now, or null if there's
+	// nothing that can be worked out.  The line a hint comes from is left
+	// to be solved again, so that asking again gives the same hint until
+	// it has been drawn in.
+	public Hint nextHint() {
+		readChanges();
+
+		boolean more = true;
+		while ( more ) {
+			more = false;
+			for ( int r=0; r<m_numRows; r++ ) {
+				if ( !m_rowDirty[r] )	continue;
+				m_rowDirty[r] = false;
+				more = true;
+				Hint hint = solveLine( true, r );
+				if ( hint != null ) {
+					m_rowDirty[r] = true;
+					return hint;
+				}
+			}
+			for ( int c=0; c<m_numCols; c++ ) {
+				if ( !m_colDirty[c] )	continue;
+				m_colDirty[c] = false;
+				more = true;
+				Hint hint = solveLine( false, c );
+				if ( hint != null ) {
+					m_colDirty[c] = true;
+					return hint;
+				}
+			}
+		}
+		return null;
+	}
+
+	// Private methods
+
+	// Copy one clue out of a Keyarray.
+	private void readClue( Keyarray keys, int i, int lens[][], int colors[][],
+						   int clues[][] ) {
+		int size = keys.getSize( i );
+		lens[i] = new int[size];
+		colors[i] = new int[size];
+		clues[i] = new int[size];
+		for ( int j=0; j<size; j++ ) {
+			lens[i][j] = keys.getNumber( i, j );
+			colors[i][j] = ColorLineSolver.indexOf( m_palette, keys.getFgColor(i,j) );
+			clues[i][j] = (lens[i][j] << 8) | colors[i][j];
+		}
+	}
+
+	// Bring the candidates up to date with the squares that have changed.
+	private void readChanges() {
+		if ( m_numGridColors != m_grid.getNumColors() ) {
+			m_indexes = ColorLineSolver.indexes( m_grid, m_palette );
+			m_numGridColors = m_grid.getNumColors();
+		}
+
+		byte visible[] = m_grid.getVisiblePlane();
+		boolean reread = false;
+		for ( int j=0; j<m_numChangedRows; j++ ) {
+			int r = m_changedRows[j];
+			int i = r*m_numCols + m_changedFrom[r];
+			for ( int c=m_changedFrom[r]; c<m_changedTo[r]; c++, i++ ) {
+				int before = m_indexes[ m_seen[i] & 0xff ];
+				int now = m_indexes[ visible[i] & 0xff ];
+				m_seen[i] = visible[i];
+				if ( now == before )	continue;
+				if ( before >= 0 )	reread = true;
+				else if ( !reread )	narrow( r, c, now );
+			}
+			m_changedTo[r] = 0;
+		}
+		m_numChangedRows = 0;
+		if ( reread )	readBoard();
+	}
+
+	// A gray square has been drawn: it can only be that color now.
+	private void narrow( int r, int c, int k ) {
+		for ( int j=0; j<m_numColors; j++ ) {
+			if ( j == k )	continue;
+			LineSolver.clear( m_rows[r][j], c );
+			LineSolver.clear( m_cols[c][j], r );
+		}
+		m_rowDirty[r] = true;
+		m_colDirty[c] = true;
+	}
+
+	// Start every line off afresh from the squares the player has drawn.
+	private void readBoard() {
+		for ( int r=0; r<m_numRows; r++ ) {
+			for ( int k=0; k<m_numColors; k++ )
+				Arrays.fill( m_rows[r][k], 0 );
+			m_rowDirty[r] = true;
+		}
+		for ( int c=0; c<m_numCols; c++ ) {
+			for ( int k=0; k<m_numColors; k++ )
+				Arrays.fill( m_cols[c][k], 0 );
+			m_colDirty[c] = true;
+		}
+
+		for ( int r=0, i=0; r<m_numRows; r++ ) {
+			for ( int c=0; c<m_numCols; c++, i++ ) {
+				int k = m_indexes[ m_seen[i] & 0xff ];
+				if ( k < 0 ) {
+					for ( k=0; k<m_numColors; k++ ) {
+						LineSolver.set( m_rows[r][k], c );
+						LineSolver.set( m_cols[c][k], r );
+					}
+				}
+				else if ( k < m_numColors ) {
+					LineSolver.set( m_rows[r][k], c );
+					LineSolver.set( m_cols[c][k], r );
+				}
+			}
+		}
+	}
+
+	// Solve one line, and pass anything it rules out on to the lines that
+	// cross it.  Returns a hint if the line pins down a gray square, or
+	// can't be completed.
+	private Hint solveLine( boolean forRow, int index ) {
+		long line[][]	= ( forRow ) ? m_rows[index] : m_cols[index];
+		long cross[][][] = ( forRow ) ? m_cols : m_rows;
+		boolean crossDirty[] = ( forRow ) ? m_colDirty : m_rowDirty;
+		int n			= ( forRow ) ? m_numCols : m_numRows;
+		int lens[]		= ( forRow ) ? m_rowLens[index] : m_colLens[index];
+		int colors[]	= ( forRow ) ? m_rowColors[index] : m_colColors[index];
+		int clue[]		= ( forRow ) ? m_rowClues[index] : m_colClues[index];
+		int numWords	= LineSolver.words( n );
+
+		int length = m_numColors * numWords;
+		for ( int k=0; k<m_numColors; k++ ) {
+			System.arraycopy( line[k], 0, m_before[k], 0, numWords );
+			System.arraycopy( line[k], 0, m_flat, k*numWords, numWords );
+		}
+
+		// Look the line up, or solve it and remember the answer.
+		m_probe.set( clue, m_flat, length );
+		long after[] = (long[])m_cache.get( m_probe );
+		if ( after != null ) {
+			m_hits++;
+			if ( after == IMPOSSIBLE )	return impossible( forRow, index );
+			for ( int k=0; k<m_numColors; k++ )
+				System.arraycopy( after, k*numWords, line[k], 0, numWords );
+		}
+		else {
+			m_misses++;
+			if ( !solve( line, n, lens, colors ) ) {
+				m_cache.put( m_probe.copy(), IMPOSSIBLE );
+				return impossible( forRow, index );
+			}
+			after = new long[length];
+			for ( int k=0; k<m_numColors; k++ )
+				System.arraycopy( line[k], 0, after, k*numWords, numWords );
+			m_cache.put( m_probe.copy(), after );
+		}
+
+		// Pass on what changed, and note any gray squares now pinned down.
+		int numForced = 0;
+		int squares[] = m_squares;
+		for ( int k=0; k<m_numColors; k++ ) {
+			for ( int i=0; i<numWords; i++ ) {
+				long gone = m_before[k][i] & ~line[k][i];
+				while ( gone != 0 ) {
+					int p = (i<<6) + Long.numberOfTrailingZeros( gone );
+					gone &= gone - 1;
+					LineSolver.clear( cross[p][k], index );
+					crossDirty[p] = true;
+				}
+			}
+		}
+		for ( int p=0; p<n; p++ ) {
+			int row = ( forRow ) ? index : p;
+			int col = ( forRow ) ? p : index;
+			if ( m_grid.getVisibleIndex(row, col) == Grid.UNSET &&
+				 colorOf( line, p ) >= 0 )
+				squares[numForced++] = p;
+		}
+		if ( numForced == 0 )	return null;
+
+		int forced[] = new int[numForced];
+		Color forcedColors[] = new Color[numForced];
+		for ( int i=0; i<numForced; i++ ) {
+			forced[i] = squares[i];
+			forcedColors[i] = m_palette[ colorOf(line, squares[i]) ];
+		}
+		return new Hint( forRow, index, forced, forcedColors, false );
+	}
+
+	// Solve a line with whichever solver suits the palette.
+	private boolean solve( long line[][], int n, int lens[], int colors[] ) {
+		if ( m_colorSolver == null )
+			return m_lineSolver.solve( line, n, lens, colors, lens.length );
+
+		for ( int p=0; p<n; p++ ) {
+			int cell = 0;
+			for ( int k=0; k<m_numColors; k++ ) {
+				if ( LineSolver.get( line[k], p ) )	cell |= 1 << k;
+			}
+			m_cells[p] = (byte)cell;
+		}
+		if ( !m_colorSolver.solve( m_cells, n, lens, colors, lens.length ) )
+			return false;
+		for ( int p=0; p<n; p++ ) {
+			for ( int k=0; k<m_numColors; k++ ) {
+				if ( (m_cells[p] & (1 << k)) == 0 )	LineSolver.clear( line[k], p );
+			}
+		}
+		return true;
+	}
+
+	// The only color a square can be, or -1 if there's more than one.
+	private int colorOf( long line[][], int p ) {
+		int color = -1;
+		for ( int k=0; k<m_numColors; k++ ) {
+			if ( LineSolver.get( line[k], p ) ) {
+				if ( color >= 0 )	return -1;
+				color = k;
+			}
+		}
+		return color;
+	}
+
+	private Hint impossible( boolean forRow, int index ) {
+		return new Hint( forRow, index, new int[0], new Color[0], true );
+	}
+
+	// A name for a color, for showing to the player.
+	static String colorName( Color color ) {
+		for ( int i=0; i<XpmDecoder.s_colors.length; i++ ) {
+			if ( XpmDecoder.s_colors[i] == color )	return XpmDecoder.s_names[i];
+		}
+		return "#" + Integer.toHexString(
+			0x1000000 | (color.getRGB() & 0xffffff) ).substring(1);
+	}
+}
@@ -4,18 +4,34 @@
 //
 //
 import java.awt.Color;
+import java.util.Arrays;
 
 class Keyarray 
 {
 
     // private variables
     Grid	m_grid;	// do we need to save this???
+    boolean	m_forRow;
     int	m_numKeys;
     Key	m_keys[];
 
+    // For checking whether lines can still be finished, shared by all of
+    // the keys, and made when first needed.  The palette is the grid's
+    // unless the applet says otherwise.  Palettes that fit in a byte are
+    // checked a byte per square, and bigger ones a bitset per color.
+    Color	m_palette[];
+    ColorLineSolver	m_checker;
+    byte	m_masks[];
+    byte	m_cells[];
+    LineSolver	m_bigChecker;
+    int		m_indexes[];
+    long	m_cand[][];
+    int		m_numGridColors;	// in the grid when the lookups were made
+
     // constructor
     public Keyarray( Grid grid, boolean forRow ) {
 		m_grid = grid;
+		m_forRow = forRow;
 		if ( forRow )	m_numKeys = grid.getNumRows();
 		else			m_numKeys = grid.getNumCols();
 
@@ -25,7 +41,23 @@ class Keyarray
 		}
     }
 
+    // Use clues that were worked out ahead of time, rather than looking
+    // at the hidden picture.
+    public Keyarray( Grid grid, boolean forRow, int numbers[][],
+					 Color colors[][] ) {
+		m_grid = grid;
+		m_forRow = forRow;
+		m_numKeys = numbers.length;
+
+		m_keys = new Key[m_numKeys];
+		for ( int i=0; i<m_numKeys; i++ ) {
+			m_keys[i] = new Key(grid, forRow, i, numbers[i], colors[i] );
+		}
+    }
+
     // methods
+    public int	getNumKeys()			{ return m_numKeys; }
+
     public int	getMaxSize() {
 		int maxSize = 0;
 		for ( int i=0; i<m_numKeys; i++ ) {
@@ -42,7 +74,52 @@ class Keyarray
     public Color getBgColor(int i, int j)	{ return m_keys[i].getBgColor(j); }
     public Color getFgColor(int i, int j)	{ return m_keys[i].getFgColor(j); }
 
-    public void	setColors(int i)		{ m_keys[i].setColors(); }
+    public boolean isFeasible(int i)	{ return m_keys[i].isFeasible(); }
+
+    // Check lines in this palette (white first, no gray) from now on.
+    public void setPalette( Color palette[] ) {
+		m_palette = palette;
+		m_checker = null;
+		m_bigChecker = null;
+		for ( int i=0; i<m_numKeys; i++ )	m_keys[i].m_colorIndexes = null;
+    }
+
+    // Recolor one key, and check whether its line can still be finished.
+    public void	setColors(int i) {
+		m_keys[i].setColors();
+		if ( m_checker == null && m_bigChecker == null ) {
+			if ( m_palette == null )
+				m_palette = ColorLineSolver.palette( m_grid );
+
+			int numSquares = (m_forRow) ? m_grid.getNumCols():m_grid.getNumRows();
+			if ( m_palette.length <= ColorLineSolver.MAX_COLORS ) {
+				m_checker = new ColorLineSolver( numSquares, getMaxSize(),
+												 m_palette.length );
+				m_cells = new byte[numSquares];
+			}
+			else {
+				m_bigChecker = new LineSolver( numSquares, getMaxSize(),
+											   m_palette.length );
+				m_cand = new long[m_palette.length][LineSolver.words(numSquares)];
+			}
+			m_numGridColors = 0;
+		}
+
+		// The grid's palette grows as new colors are drawn, so the lookups
+		// from it are made again whenever it has.
+		if ( m_numGridColors != m_grid.getNumColors() ) {
+			m_numGridColors = m_grid.getNumColors();
+			if ( m_checker != null )
+				m_masks = ColorLineSolver.masks( m_grid, m_palette );
+			else
+				m_indexes = ColorLineSolver.indexes( m_grid, m_palette );
+		}
+
+		if ( m_checker != null )
+			m_keys[i].checkFeasible( m_checker, m_palette, m_masks, m_cells );
+		else
+			m_keys[i].checkFeasible( m_bigChecker, m_palette, m_indexes, m_cand );
+    }
 }
 
 
@@ -58,25 +135,57 @@ class Key
 	Color	m_bgColors[];
 	Color	m_fgColors[];
 
+	// Scratch space for the numbers the player has drawn so far.  A line
+	// can't have more blocks than it has squares, so these never overflow,
+	// and they're reused so that setColors never has to allocate.
+	int		m_drawnNumbers[];
+	Color	m_drawnColors[];
+
+	// Whether the line can still be finished, as it's been drawn so far.
+	boolean	m_feasible = true;
+	int		m_colorIndexes[];	// the colors of the numbers, for the checker
+
 	// constructor
 	public Key( Grid grid, boolean forRow, int index ) {
 		m_grid		= grid;
 		m_forRow	= forRow;
 		m_index		= index;
 
+		int numSquares = (m_forRow) ? m_grid.getNumCols():m_grid.getNumRows();
+		m_drawnNumbers = new int[numSquares];
+		m_drawnColors = new Color[numSquares];
+
 		// Assemble the number list for this row or column.
-		int itemp[] = new int[32];	// should be more than enough
-		Color ctemp[] = new Color[32];	// should be more than enough
+		int itemp[] = m_drawnNumbers;
+		Color ctemp[] = m_drawnColors;
 		int tempLength = makeNumbers( false, itemp, ctemp );
 
 		// Copy the temporary array into the permanent one
 		// also, initialize the colors.
-		m_numbers = new int[tempLength];
-		m_bgColors = new Color[tempLength];
-		m_fgColors = new Color[tempLength];
-		for ( int i=0; i<tempLength; i++ ) {
-			m_numbers[i] = itemp[i];
-			m_fgColors[i] = ctemp[i];
+		setNumbers( itemp, ctemp, tempLength );
+	}
+
+	// Use a number list that was worked out ahead of time.
+	public Key( Grid grid, boolean forRow, int index, int numbers[],
+				Color colors[] ) {
+		m_grid		= grid;
+		m_forRow	= forRow;
+		m_index		= index;
+
+		int numSquares = (m_forRow) ? m_grid.getNumCols():m_grid.getNumRows();
+		m_drawnNumbers = new int[numSquares];
+		m_drawnColors = new Color[numSquares];
+
+		setNumbers( numbers, colors, numbers.length );
+	}
+
+	private void setNumbers( int numbers[], Color colors[], int length ) {
+		m_numbers = new int[length];
+		m_bgColors = new Color[length];
+		m_fgColors = new Color[length];
+		for ( int i=0; i<length; i++ ) {
+			m_numbers[i] = numbers[i];
+			m_fgColors[i] = colors[i];
 			m_bgColors[i] = Color.lightGray;
 		}
 	}
@@ -87,6 +196,7 @@ class Key
 	public int[] getNumbers()			{ return m_numbers; }
 	public Color getBgColor( int index )	{ return m_bgColors[index]; }
 	public Color getFgColor( int index )	{ return m_fgColors[index]; }
+	public boolean isFeasible()			{ return m_feasible; }
 
 	// Check the visible colors in the grid to see which of our numbers
 	// have been "solved".  
@@ -97,8 +207,8 @@ class Key
 		final Color unset = Color.lightGray;
 
 		// Assemble the number list for this row or column.
-		int itemp[] = new int[32];	// should be more than enough
-		Color ctemp[] = new Color[32];	// should be more than enough
+		int itemp[] = m_drawnNumbers;
+		Color ctemp[] = m_drawnColors;
 		int tempLength = makeNumbers( true, itemp, ctemp );
 
 		// Set all of the colors gray to start with
@@ -113,7 +223,8 @@ class Key
 		for (int i=0; i<maxLen; i++) {
 
 			// Quit looking in this direction when we hit a block of gray
-			if (ctemp[i] == unset)	break;
+			// (past the end of the drawn blocks, the scratch is stale)
+			if (i < tempLength && ctemp[i] == unset)	break;
 
 			// Give up if we've gone off either end.
 			if ((i >= m_numbers.length) || (i >= tempLength)) {
@@ -149,26 +260,81 @@ class Key
 		}
 	}
 
+	// Check whether there's still some way to place our numbers in the
+	// line, given the squares drawn so far (gray ones can be anything).
+	// masks[] turns the grid's palette indexes into the checker's bitmasks.
+	public boolean checkFeasible( ColorLineSolver checker, Color palette[],
+								  byte masks[], byte cells[] ) {
+		colorIndexes( palette );
+
+		byte plane[] = m_grid.getVisiblePlane();
+		int numSquares = (m_forRow) ? m_grid.getNumCols():m_grid.getNumRows();
+		int step = (m_forRow) ? 1 : m_grid.getNumCols();
+		int p = (m_forRow) ? m_index*m_grid.getNumCols() : m_index;
+		for ( int i=0; i<numSquares; i++, p+=step )
+			cells[i] = masks[ plane[p] & 0xff ];
+
+		m_feasible = checker.isFeasible( cells, numSquares, m_numbers,
+										 m_colorIndexes, m_numbers.length );
+		return m_feasible;
+	}
+
+	// The same, for palettes too big for a byte.  indexes[] turns the
+	// grid's palette indexes into the checker's colors, and cand[] gets a
+	// bitset per color.
+	public boolean checkFeasible( LineSolver checker, Color palette[],
+								  int indexes[], long cand[][] ) {
+		colorIndexes( palette );
+
+		byte plane[] = m_grid.getVisiblePlane();
+		int numSquares = (m_forRow) ? m_grid.getNumCols():m_grid.getNumRows();
+		int step = (m_forRow) ? 1 : m_grid.getNumCols();
+		int p = (m_forRow) ? m_index*m_grid.getNumCols() : m_index;
+		for ( int k=0; k<cand.length; k++ )
+			Arrays.fill( cand[k], 0 );
+		for ( int i=0; i<numSquares; i++, p+=step ) {
+			int k = indexes[ plane[p] & 0xff ];
+			if ( k >= 0 )	LineSolver.set( cand[k], i );
+			else if ( (plane[p] & 0xff) == Grid.UNSET ) {
+				for ( k=0; k<cand.length; k++ )	LineSolver.set( cand[k], i );
+			}
+		}
+
+		m_feasible = checker.isFeasible( cand, numSquares, m_numbers,
+										 m_colorIndexes, m_numbers.length );
+		return m_feasible;
+	}
+
+	// Our clue colors as indexes into the checker's palette.
+	private void colorIndexes( Color palette[] ) {
+		if ( m_colorIndexes != null )	return;
+		m_colorIndexes = new int[m_numbers.length];
+		for ( int i=0; i<m_numbers.length; i++ )
+			m_colorIndexes[i] = ColorLineSolver.indexOf( palette, m_fgColors[i] );
+	}
+
 	// Assemble a list of numbers, either from the hidden colors,
 	// or from the visible ones. 
 	public int makeNumbers( boolean visible, int numbers[], Color colors[] ) {
 
+		// Walk straight through the grid's plane of palette indexes.
+		byte plane[] = (visible) ? m_grid.getVisiblePlane()
+			: m_grid.getHiddenPlane();
 		int numSquares = (m_forRow) ? m_grid.getNumCols():m_grid.getNumRows();
+		int step = (m_forRow) ? 1 : m_grid.getNumCols();
+		int p = (m_forRow) ? m_index*m_grid.getNumCols() : m_index;
 		int n = 0;
-		int r = ( m_forRow ) ? m_index : 0;
-		int c = ( m_forRow ) ? 0 : m_index;
-		Color lastColor = Color.white;
+		int lastColor = Grid.WHITE;
 		boolean inBlock = false;
 
-		for ( int i=0; i<numSquares; i++ ) {
-			Color thisColor = (visible) ? m_grid.getVisibleColor( r, c )
-				: m_grid.getHiddenColor( r, c );
+		for ( int i=0; i<numSquares; i++, p+=step ) {
+			int thisColor = plane[p] & 0xff;
 
 			// we're already in a block...
 			if (inBlock) {
 
 				// If this is the end of a block, get ready for the next one.
-				if (thisColor == Color.white) {
+				if (thisColor == Grid.WHITE) {
 					n++;
 					inBlock = false; 
 				}
@@ -183,20 +349,20 @@ class Key
 					n++;
 					inBlock = true;
 					numbers[n] = 1;
-					colors[n] = thisColor;
+					colors[n] = m_grid.getPaletteColor(thisColor);
 				}
 			}
 
 			// we're not in a block...
 			else {
 				// If this is another white square, do nothing.
-				if (thisColor == Color.white) {}
+				if (thisColor == Grid.WHITE) {}
 
 				// If this is a new block, start counting.
 				if (thisColor != lastColor)	{
 					inBlock = true;
 					numbers[n] = 1;
-					colors[n] = thisColor;
+					colors[n] = m_grid.getPaletteColor(thisColor);
 				}
 
 				// If this is a gray square, make sure that there's a zero here
@@ -204,8 +370,6 @@ class Key
 			}
 
 			lastColor = thisColor;
-			if ( m_forRow )	c++;
-			else			r++;
 		}
 
 		// Take care of a possible final block
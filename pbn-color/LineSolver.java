@@ -0,0 +1,141 @@
+//
+//
+// LineSolver
+//
+// Solves a single row or column of a puzzle, given its clue and the set of
+// colors each of its squares might still be.  The candidates are kept as
+// one bitset per palette color (bit p set means that square p can still be
+// that color), with palette index 0 always being white.
+//
+// Two runs of different colors may touch, but two runs of the same color
+// need at least one white square between them -- the same rule that
+// Key.makeNumbers uses when it builds the clues.
+//
+// Where each run can legally sit is worked out by ColorLineSolver's
+// placement tables, which are the only copy of that rule; this class just
+// feeds them from the bitsets and turns the answer back into bitsets.  It
+// is the one to use for the Solver, and for palettes too big for
+// ColorLineSolver's one byte per square.
+//
+
+class LineSolver
+{
+	// private variables
+	int		m_maxLen;
+	int		m_maxRuns;
+	int		m_numColors;
+	int		m_numWords;
+
+	// scratch space, reused from line to line
+	ColorLineSolver	m_placer;	// the placement tables
+	long	m_out[][];		// the new candidates
+
+	// constructor
+	public LineSolver( int maxLen, int maxRuns, int numColors ) {
+		m_maxLen	= maxLen;
+		m_maxRuns	= maxRuns;
+		m_numColors	= numColors;
+		m_numWords	= words( maxLen );
+
+		m_placer	= new ColorLineSolver( maxLen, maxRuns, numColors );
+		m_out		= new long[numColors][m_numWords];
+	}
+
+	// Narrow down the candidates for one line.  cand[k] is the bitset of
+	// squares that may be color k; it is updated in place.  Returns false
+	// if the line can't be completed at all.
+	public boolean solve( long cand[][], int n, int lens[], int colors[],
+						  int numRuns ) {
+
+		m_placer.stretch( cand, n, colors, numRuns );
+		if ( !m_placer.fillForward( n, lens, colors, numRuns ) )	return false;
+		m_placer.fillBackward( n, lens, colors, numRuns );
+
+		int numWords = words( n );
+		for ( int k=0; k<m_numColors; k++ ) {
+			for ( int i=0; i<numWords; i++ )	m_out[k][i] = 0;
+		}
+
+		// Every legal placement of every run colors the squares it covers.
+		for ( int j=0; j<numRuns; j++ ) {
+			int len = lens[j];
+			long out[] = m_out[colors[j]];
+			int reach = 0;
+			for ( int s=0; s+len<=n; s++ ) {
+				if ( !m_placer.canStart( j, s, n, colors ) )	continue;
+				setRange( out, Math.max(s, reach), s+len );
+				reach = s+len;
+			}
+		}
+
+		// A square can be white if the runs can be split around it.
+		long out[] = m_out[0];
+		for ( int p=0; p<n; p++ ) {
+			if ( m_placer.canBeWhite( p, n, numRuns ) )	set( out, p );
+		}
+
+		// Copy the results back, making sure every square still has a color.
+		for ( int i=0; i<numWords; i++ ) {
+			long any = 0;
+			for ( int k=0; k<m_numColors; k++ ) {
+				cand[k][i] &= m_out[k][i];
+				any |= cand[k][i];
+			}
+			if ( any != mask( n, i ) )	return false;
+		}
+		return true;
+	}
+
+	// Can this line still be completed?  Only the forward pass is needed
+	// to tell.
+	public boolean isFeasible( long cand[][], int n, int lens[], int colors[],
+							   int numRuns ) {
+		m_placer.stretch( cand, n, colors, numRuns );
+		return m_placer.fillForward( n, lens, colors, numRuns );
+	}
+
+	// Bitset helpers
+	static int words( int n )	{ return (n+63) >>> 6; }
+
+	static boolean get( long bits[], int p ) {
+		return (bits[p>>>6] & (1L << p)) != 0;
+	}
+
+	static void set( long bits[], int p )	{ bits[p>>>6] |= (1L << p); }
+	static void clear( long bits[], int p )	{ bits[p>>>6] &= ~(1L << p); }
+
+	// The bits of word i that fall inside a line of length n.
+	static long mask( int n, int i ) {
+		int rest = n - (i<<6);
+		return ( rest >= 64 ) ? -1L : (1L << rest) - 1;
+	}
+
+	// Are all of the bits in [from,to) set?
+	static boolean allSet( long bits[], int from, int to ) {
+		if ( from >= to )	return true;
+		int first = from>>>6, last = (to-1)>>>6;
+		long head = -1L << from;
+		long tail = -1L >>> -to;
+		if ( first == last )	return (bits[first] & head & tail) == (head & tail);
+		if ( (bits[first] & head) != head )	return false;
+		for ( int i=first+1; i<last; i++ ) {
+			if ( bits[i] != -1L )	return false;
+		}
+		return (bits[last] & tail) == tail;
+	}
+
+	// Set all of the bits in [from,to).
+	static void setRange( long bits[], int from, int to ) {
+		if ( from >= to )	return;
+		int first = from>>>6, last = (to-1)>>>6;
+		long head = -1L << from;
+		long tail = -1L >>> -to;
+		if ( first == last ) {
+			bits[first] |= head & tail;
+			return;
+		}
+		bits[first] |= head;
+		for ( int i=first+1; i<last; i++ )	bits[i] = -1L;
+		bits[last] |= tail;
+	}
+}
@@ -4,7 +4,6 @@
 
 import java.awt.BorderLayout;
 import java.awt.Color;
-import java.net.URL;
 import java.util.*;
 import javax.swing.*;
 
@@ -17,14 +16,19 @@ public class PBN13 extends JApplet
 
 	// Members for applet parameters (with default values)
 	private String	m_filename	= "";
+	private String	m_pack		= "";
+	private String	m_next		= "";
 	private boolean	m_solved	= false;
+	private boolean	m_large		= false;
 
 	// Parameter names.
 	private final String PARAM_filename	= "filename";
 	private final String PARAM_solved	= "solved";
+	private final String PARAM_pack		= "pack";
+	private final String PARAM_large	= "large";
+	private final String PARAM_next		= "next";
 
 	// member objects
-	private Picture		m_picture;
 	private Grid		m_grid;
 	private Keyarray	m_rowKeys;
 	private Keyarray	m_colKeys;
@@ -34,6 +38,13 @@ public class PBN13 extends JApplet
 	// successful initialization flag
 	private Exception	m_exception;
 
+	// Startup happens in stages: a placeholder goes up straight away, the
+	// puzzle is loaded by a worker, and then the real GUI replaces it.
+	private JLabel		m_placeholder;
+	private SwingWorker	m_loader;
+	private long		m_startTime;
+	private long		m_firstPaintTime;
+
 	// accessors
 	public String		filename()		{ return m_filename; }
 	public Grid			grid()			{ return m_grid; }
@@ -41,6 +52,7 @@ public class PBN13 extends JApplet
 	public Keyarray		colKeys()		{ return m_colKeys; }
 	public ColorInfo[]	neededColors()	{ return m_neededColors; }
 	public int			numNeededColors() { return m_numColors; };
+	public boolean		large()			{ return m_large; }
 
 	// PBN Class Constructor
 	//-------------------------------------------------------------------------
@@ -66,6 +78,9 @@ public class PBN13 extends JApplet
 			{// "Name",			"Type",		"Description"
 				{ PARAM_filename, "String",	"name of the file to load" },
 				{ PARAM_solved,	"boolean",	"should it start out solved?" },
+				{ PARAM_pack,	"String",	"compiled pack holding the file" },
+				{ PARAM_large,	"boolean",	"scroll and zoom, for big puzzles" },
+				{ PARAM_next,	"String",	"file for the next puzzle, to prefetch" },
 			};
 		return info;		
 	}
@@ -74,14 +89,32 @@ public class PBN13 extends JApplet
 	//-------------------------------------------------------------------------
 	public void init()
 	{
+		m_startTime = System.nanoTime();
+
 		// Read the input parameters into the member variables.
 		readParams();
 
-		// Create the objects that we'll need for the guts of the program.
-		makeGuts();
+		// Put something up while we load.
+		makePlaceholder();
 
-		// Create the objects that we'll need for the GUI.
-		makeGUI();
+		// Create the objects that we'll need for the guts of the program,
+		// and then the ones we'll need for the GUI, without holding up
+		// the user interface.
+		m_loader = new SwingWorker() {
+			protected Object doInBackground() {
+				try {
+					makeGuts();
+				}
+				catch ( RuntimeException e ) { m_exception = e; }
+				return null;
+			}
+			protected void done() {
+				if ( isCancelled() )	return;
+				if ( m_exception != null )	makeErrorGUI();
+				else						makeGUI();
+			}
+		};
+		m_loader.execute();
 	}
 
 	// Place additional applet clean up code here.  destroy() is called when
@@ -89,7 +122,13 @@ public class PBN13 extends JApplet
 	//-------------------------------------------------------------------------
 	public void destroy()
 	{
-		// nothing to do with me!
+		// stop loading if we haven't finished
+		if ( m_loader != null )	m_loader.cancel( true );
+
+		// save the player's work, if there is any
+		if ( m_loader != null && m_loader.isDone() && !m_loader.isCancelled() &&
+			 m_exception == null && !m_solved )
+			SavedBoard.save( m_filename, m_grid );
 	}
 
 	// Private methods:
@@ -107,23 +146,33 @@ public class PBN13 extends JApplet
 		// should the puzzle start out solved?
 		param = getParameter(PARAM_solved);	
 		if (param != null)	  m_solved = Boolean.valueOf(param).booleanValue();
+
+		// compiled puzzle pack to load the file from, if any
+		param = getParameter(PARAM_pack);
+		if (param != null)	  m_pack = param;
+
+		// should the puzzle be shown in a scrolling viewport?
+		param = getParameter(PARAM_large);
+		if (param != null)	  m_large = Boolean.valueOf(param).booleanValue();
+
+		// name of the file for the next puzzle, if any
+		param = getParameter(PARAM_next);
+		if (param != null)	  m_next = param;
 	}
 
 	// Create the objects that we'll need for the guts of the program.
 	private void makeGuts()
 	{
-		m_picture	= new Picture();
-		URL base = getDocumentBase();
-		Color colors[][];
+		// This is instant if the last page prefetched it.
 		try {
-			colors = m_picture.create(base, m_filename);
+			Prefetcher.Puzzle puzzle = Prefetcher.take( getDocumentBase(),
+				m_filename, m_pack, m_solved );
+			m_grid		= puzzle.grid();
+			m_rowKeys	= puzzle.rowKeys();
+			m_colKeys	= puzzle.colKeys();
 		}
 		catch ( Exception e ) { m_exception = e; return; }
 
-		m_grid		= new Grid( colors, m_solved );
-		m_rowKeys	= new Keyarray(m_grid, true);
-		m_colKeys	= new Keyarray(m_grid, false);
-
 		// Calculate which (and how many) colors are needed.
 		Hashtable ht = new Hashtable();
 		for ( int r=0; r<m_grid.getNumRows(); r++ ) {
@@ -134,7 +183,7 @@ public class PBN13 extends JApplet
 			}
 		}
 
-		m_neededColors = new ColorInfo[ht.size() + 1];
+		m_neededColors = new ColorInfo[ht.size() + 2];
 		m_numColors = 0;
 
 		// unguessed color, always needed
@@ -155,13 +204,85 @@ public class PBN13 extends JApplet
 
 		if ( ht.contains(Color.blue) )
 			m_neededColors[m_numColors++] = new ColorInfo("Blue", Color.blue);
+
+		// ...then anything else, named by its value.
+		for ( int r=0; r<m_grid.getNumRows(); r++ ) {
+			for ( int c=0; c<m_grid.getNumCols(); c++ ) {
+				Color color = m_grid.getHiddenColor( r, c );
+				if ( color != null && !isNeeded(color) ) {
+					String name = "#" + Integer.toHexString(
+						0x1000000 | (color.getRGB() & 0xffffff) ).substring(1);
+					m_neededColors[m_numColors++] = new ColorInfo(name, color);
+				}
+			}
+		}
+
+		// The keys check their lines in the same colors the player picks.
+		Color palette[] = ColorLineSolver.palette( m_neededColors, m_numColors );
+		m_rowKeys.setPalette( palette );
+		m_colKeys.setPalette( palette );
+
+		// Pick up where the player left off last time.
+		if ( !m_solved )
+			SavedBoard.restore( m_filename, m_grid, m_rowKeys, m_colKeys );
+	}
+
+	// Is this color already in the list of needed colors?
+	private boolean isNeeded( Color color )
+	{
+		for ( int i=0; i<m_numColors; i++ ) {
+			if ( m_neededColors[i].bg().equals(color) )	return true;
+		}
+		return false;
+	}
+
+	// A label to show while the puzzle loads.  It notes when it first
+	// gets painted, so that we can tell how long startup took.
+	private void makePlaceholder()
+	{
+		m_placeholder = new JLabel( "Loading " + m_filename + "...",
+									SwingConstants.CENTER ) {
+			protected void paintComponent( java.awt.Graphics g ) {
+				super.paintComponent( g );
+				if ( m_firstPaintTime == 0 )	m_firstPaintTime = System.nanoTime();
+			}
+		};
+		getContentPane().setLayout( new BorderLayout() );
+		getContentPane().add( m_placeholder, "Center" );
 	}
 
 	// Create the objects that we'll need for the GUI.
 	private void makeGUI()
 	{
-		getContentPane().setLayout( new BorderLayout() );
+		getContentPane().remove( m_placeholder );
 		getContentPane().add( new PlayArea(this), "Center" );
+		getContentPane().validate();
+		getContentPane().repaint();
+
+		// This runs once the new GUI has been laid out and painted.
+		SwingUtilities.invokeLater( new Runnable() {
+			public void run() {
+				long interactive = System.nanoTime();
+				if ( m_firstPaintTime == 0 )	m_firstPaintTime = interactive;
+				showStatus( m_filename + ": first paint " +
+					(m_firstPaintTime - m_startTime) / 1000000 + "ms, interactive " +
+					(interactive - m_startTime) / 1000000 + "ms" );
+
+				// Get the next puzzle ready while this one is being played.
+				if ( m_next.length() > 0 )
+					Prefetcher.prefetch( getDocumentBase(), m_next, m_pack, false );
+			}
+		});
+	}
+
+	// Say what went wrong, rather than putting up a GUI with no puzzle.
+	private void makeErrorGUI()
+	{
+		m_placeholder.setText( "Couldn't load " + m_filename + ": " +
+							   m_exception.getMessage() );
+		m_placeholder.setForeground( Color.red );
+		showStatus( m_exception.toString() );
+		m_exception.printStackTrace();
 	}
 
 }
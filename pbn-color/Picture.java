@@ -6,104 +6,148 @@
 import java.awt.Color;
 import java.io.*;
 import java.util.*;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 class Picture
 {
 
+	// pictures that have already been read, shared by everybody
+	static final int	CACHE_ENTRIES	= 64;
+	static final long	CACHE_BYTES		= 1024 * 1024;
+	private static PictureCache	s_cache =
+		new PictureCache( CACHE_ENTRIES, CACHE_BYTES );
+
+	// colors found in .xpm files that we couldn't decode
+	private Vector	m_unknownColors = new Vector();
+
 	// Constructor
 	public Picture() {
 	}
 
 	// methods
+	public Vector unknownColors() { return m_unknownColors; }
+	public static PictureCache getCache() { return s_cache; }
+
 	public Color[][] create( URL base, String filename ) 
 		throws UnknownFileTypeException, IOException {
 
 		if	(filename.length() == 0)	return makeDefaultPicture();
 		else {
-			InputStream is = new URL(base, filename).openStream();
-			if		( filename.endsWith( ".xbm" ) )	return makeXbmPicture(is);
-			else if ( filename.endsWith( ".xpm" ) )	return makeXpmPicture(is);
-			else
-				throw new UnknownFileTypeException(filename);
+			URL url = new URL(base, filename);
+
+			// If we've read this one before, there's nothing to do.
+			PictureCache.Entry entry = s_cache.get( url.toString() );
+			if ( entry != null ) {
+				m_unknownColors.addAll( entry.m_unknownColors );
+				return entry.toColors();
+			}
+
+			Color colors[][] = load( url, filename );
+			s_cache.put( url.toString(),
+						 new PictureCache.Entry(colors, m_unknownColors) );
+			return colors;
 		}
 	}
 
-	// Read from a file in .xbm format.
-	private Color[][] makeXbmPicture( InputStream is ) throws IOException {
+	// Fetch and parse a picture.
+	private Color[][] load( URL url, String filename )
+		throws UnknownFileTypeException, IOException {
 
-		BufferedInputStream in = new BufferedInputStream(is, 4000);
-		Reader reader = new BufferedReader(new InputStreamReader(in));
-		StreamTokenizer     st = new StreamTokenizer(reader);
+		// Local .xbm files can be scanned without copying them.
+		if ( filename.endsWith( ".xbm" ) &&
+			 url.getProtocol().equals( "file" ) ) {
+			try {
+				return makeXbmPicture( mapFile(new File(url.toURI())) );
+			}
+			catch ( URISyntaxException e ) {}	// read it the usual way
+		}
 
-		// Figure out the dimensions and allocate the color array.
-		do { st.nextToken(); } while ( st.ttype != st.TT_NUMBER );
-		int numCols = (int)st.nval;
-		do { st.nextToken(); } while ( st.ttype != st.TT_NUMBER );
-		int numRows = (int)st.nval;
-		Color colors[][] = new Color[numRows][numCols];
+		InputStream is = url.openStream();
+		try {
+			return read(filename, is);
+		}
+		finally {
+			is.close();
+		}
+	}
 
-		// Ignore any further #defines.
-		st.commentChar('#');
+	// Read a picture that has already been opened, using the filename
+	// to tell what format it's in.
+	public Color[][] read( String filename, InputStream is )
+		throws UnknownFileTypeException, IOException {
 
-		for ( int r=0; r<numRows; r++ ) {
+		if		( filename.endsWith( ".xbm" ) )	return makeXbmPicture(is);
+		else if ( filename.endsWith( ".xpm" ) )	return makeXpmPicture(is);
+		else
+			throw new UnknownFileTypeException(filename);
+	}
 
-			// Read enough numbers to satisfy this row.
-			for ( int c=0,i=0; i<((numCols+7)/8); i++ ) {
-				do {
-					st.nextToken();
-				} while (st.ttype != st.TT_WORD || !(st.sval).startsWith("x"));
+	// Read from a file in .xbm format.
+	private Color[][] makeXbmPicture( InputStream is ) throws IOException {
+		return makeXbmPicture( ByteBuffer.wrap( readAll(is) ) );
+	}
 
-				// Convert this hex representation into an integer.
-				int x = Integer.valueOf((st.sval).substring(1),16).intValue();
+	private Color[][] makeXbmPicture( ByteBuffer buf ) throws IOException {
+		XbmScanner xbm = new XbmScanner( buf );
+		int numRows = xbm.getHeight();
+		int numCols = xbm.getWidth();
+		int stride = xbm.getWordsPerRow();
+		long bits[] = xbm.getBits();
+		Color colors[][] = new Color[numRows][numCols];
 
-				for ( int b=1, j=0; (j<8 && c<numCols); b<<=1, j++, c++ ) {
-					colors[r][c] = ((x & b) > 0 ) ? Color.black : Color.white;
-				}
+		for ( int r=0; r<numRows; r++ ) {
+			for ( int c=0; c<numCols; c++ ) {
+				long word = bits[r*stride + (c>>>6)];
+				colors[r][c] = ((word & (1L << c)) != 0) ? Color.black
+					: Color.white;
 			}
 		}
 
 		return colors;
 	}
 
+	// Map a local file straight into memory.
+	private ByteBuffer mapFile( File file ) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile( file, "r" );
+		try {
+			FileChannel channel = raf.getChannel();
+			return channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	// Read everything that's left in a stream.
+	static byte[] readAll( InputStream is ) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream( 4000 );
+		byte buf[] = new byte[4000];
+		int n;
+		while ( (n = is.read(buf)) > 0 )	out.write( buf, 0, n );
+		return out.toByteArray();
+	}
+
 	// Read from a file in .xpm format.
 	private Color[][] makeXpmPicture( InputStream is ) throws IOException {
 
-		BufferedInputStream in = new BufferedInputStream(is, 4000);
-		BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-
-		// Discard the first two lines of the file.
-		reader.readLine();
-		reader.readLine();
-
-		// The next line contains the sizes and the number of colors
-		StringTokenizer sizes = new StringTokenizer(reader.readLine()," \"");
- 		int numCols = Integer.parseInt(sizes.nextToken());
- 		int numRows = Integer.parseInt(sizes.nextToken());
- 		int numColors = Integer.parseInt(sizes.nextToken());
- 		Color colors[][] = new Color[numRows][numCols];
-
-		// The next set of lines defines the colors used
-		Hashtable ht = new Hashtable(numColors);
-		for (int i=0; i<numColors; i++) {
-			StringTokenizer st = new StringTokenizer(reader.readLine()," \"");
-			String ch = st.nextToken();
-			String unused = st.nextToken();
- 			String color = st.nextToken();
- 			if	(color.equals("#ffffff")) { ht.put(ch,Color.white); }
-			//else ht.put(ch,Color.decode(color));
- 			else if (color.equals("#000000")) { ht.put(ch,Color.black); }
- 			else if (color.equals("#ff0000")) { ht.put(ch,Color.red); }
- 			else if (color.equals("#00ff00")) { ht.put(ch,Color.green); }
- 			else if (color.equals("#0000ff")) { ht.put(ch,Color.blue); }
-			else System.out.println("unknown color: "+color);
+		XpmDecoder xpm = new XpmDecoder( ByteBuffer.wrap( readAll(is) ) );
+		int numRows = xpm.getHeight();
+		int numCols = xpm.getWidth();
+		Color colors[][] = new Color[numRows][numCols];
+
+		// Squares with colors we couldn't decode are left null.
+		for ( int i=0; i<xpm.unknownColors().size(); i++ ) {
+			Object color = xpm.unknownColors().elementAt(i);
+			System.out.println("unknown color: "+color);
+			m_unknownColors.addElement(color);
 		}
 
-		// The rest of the file maps out the image
 		for ( int r=0; r<numRows; r++ ) {
-			String line = reader.readLine().substring(1,1+numCols);
- 			for ( int c=0; c<numCols; c++ ) {
-				colors[r][c] = (Color)ht.get(line.substring(c,c+1)); 
+			for ( int c=0; c<numCols; c++ ) {
+				colors[r][c] = xpm.getColor(r,c);
 			}
 		}
 
@@ -0,0 +1,140 @@
+//
+//
+// PictureCache
+//
+// Remembers pictures that have already been read, by URL, so that coming
+// back to a puzzle (or reloading the applet) doesn't have to fetch and
+// parse the file again.  Pictures are kept packed, as a small palette and
+// one byte per square.  When there are too many of them, or they take up
+// too much room, the least recently used ones are thrown away.
+//
+// It's safe to share one cache between threads.
+//
+import java.awt.Color;
+import java.util.*;
+
+class PictureCache
+{
+	//=========================================
+	// Internal class for one packed picture
+	//=========================================
+	static class Entry
+	{
+		int		m_numRows;
+		int		m_numCols;
+		Color	m_palette[];
+		byte	m_pixels[];
+		Vector	m_unknownColors;
+
+		// constructor
+		public Entry( Color colors[][], Vector unknownColors ) {
+			m_numRows = colors.length;
+			m_numCols = colors[0].length;
+			m_unknownColors = (Vector)unknownColors.clone();
+			m_pixels = new byte[m_numRows * m_numCols];
+
+			Color palette[] = new Color[256];
+			int numColors = 0;
+			int k = -1;
+			for ( int r=0,i=0; r<m_numRows; r++ ) {
+				for ( int c=0; c<m_numCols; c++,i++ ) {
+					Color color = colors[r][c];
+					if ( k < 0 || palette[k] != color ) {
+						for ( k=0; k<numColors && palette[k] != color; k++ ) {}
+						if ( k == numColors ) {
+							if ( k == palette.length )
+								throw new IllegalArgumentException(
+									"more than 256 colors" );
+							palette[numColors++] = color;
+						}
+					}
+					m_pixels[i] = (byte)k;
+				}
+			}
+			m_palette = new Color[numColors];
+			System.arraycopy( palette, 0, m_palette, 0, numColors );
+		}
+
+		// Unpack the picture again.
+		public Color[][] toColors() {
+			Color colors[][] = new Color[m_numRows][m_numCols];
+			for ( int r=0,i=0; r<m_numRows; r++ ) {
+				for ( int c=0; c<m_numCols; c++,i++ )
+					colors[r][c] = m_palette[ m_pixels[i] & 0xff ];
+			}
+			return colors;
+		}
+
+		// Roughly how much room this takes.
+		public long size() {
+			return 64 + m_pixels.length + 8 * m_palette.length;
+		}
+	}
+
+	// private variables
+	private LinkedHashMap	m_entries = new LinkedHashMap( 16, 0.75f, true );
+	private int		m_maxEntries;
+	private long	m_maxBytes;
+	private long	m_bytes;
+	private long	m_hits;
+	private long	m_misses;
+
+	// constructor
+	public PictureCache( int maxEntries, long maxBytes ) {
+		m_maxEntries = maxEntries;
+		m_maxBytes = maxBytes;
+	}
+
+	// methods
+	public synchronized long getHits()		{ return m_hits; }
+	public synchronized long getMisses()	{ return m_misses; }
+	public synchronized int	getSize()		{ return m_entries.size(); }
+	public synchronized long getBytes()		{ return m_bytes; }
+
+	// Change the limits, throwing away whatever no longer fits.
+	public synchronized void setLimits( int maxEntries, long maxBytes ) {
+		m_maxEntries = maxEntries;
+		m_maxBytes = maxBytes;
+		trim();
+	}
+
+	// Look up a picture, returning null (and counting a miss) if it
+	// isn't here.
+	public synchronized Entry get( String url ) {
+		Entry entry = (Entry)m_entries.get( url );
+		if ( entry == null )	m_misses++;
+		else					m_hits++;
+		return entry;
+	}
+
+	public synchronized void put( String url, Entry entry ) {
+		Entry old = (Entry)m_entries.put( url, entry );
+		if ( old != null )	m_bytes -= old.size();
+		m_bytes += entry.size();
+		trim();
+	}
+
+	public synchronized void clear() {
+		m_entries.clear();
+		m_bytes = 0;
+	}
+
+	public synchronized String toString() {
+		return "PictureCache: " + m_entries.size() + " pictures, " + m_bytes +
+			" bytes, " + m_hits + " hits, " + m_misses + " misses";
+	}
+
+	// Private methods
+
+	// Throw away the least recently used pictures until we're under
+	// both limits.
+	private void trim() {
+		Iterator it = m_entries.values().iterator();
+		while ( it.hasNext() &&
+				(m_entries.size() > m_maxEntries || m_bytes > m_maxBytes) ) {
+			Entry eldest = (Entry)it.next();
+			m_bytes -= eldest.size();
+			it.remove();
+		}
+	}
+}
@@ -20,6 +20,7 @@ public class PlayArea extends JPanel
 	private Keyarray	m_colKeys;
 
 	private int			m_numNeededColors;
+	private int			m_numShortcuts;
 	private ColorInfo[] m_neededColors;
 
 	// Shortcut keys
@@ -27,6 +28,7 @@ public class PlayArea extends JPanel
 	private	char right[] = {';','l','k','j','h'};
 
 	// GUI objects
+	private MyKeyListener m_keyListener = new MyKeyListener();
 	private JLabel		m_status;
 	private ColorPanel	m_colorPanel;
 	private PlayGrid	m_playGrid;
@@ -34,6 +36,26 @@ public class PlayArea extends JPanel
 
 	private final Color	m_background = Color.white;
 
+	// Big puzzles don't fit, so they're shown a piece at a time in a
+	// scrolling viewport, with the keys in rulers along the top and the
+	// left that scroll with the squares.  The squares are a fixed size
+	// that can be zoomed.
+	private static final int LARGE_SIZE	= 64;	// rows or columns
+	private static final int MIN_ZOOM	= 3;
+	private static final int MAX_ZOOM	= 40;
+	private boolean		m_large;
+	private int			m_zoom = 12;
+	private JScrollPane	m_scroller;
+	private KeyRuler	m_rowRuler;
+	private KeyRuler	m_colRuler;
+
+	// the last few fills, for undo and redo
+	private static final int UNDO_SIZE	= 1000;
+	private UndoLog		m_undo;
+
+	// works out hints, when they're asked for
+	private HintEngine	m_hints;
+
 	// Constructor
 	public PlayArea(PBN13 applet)
 	{
@@ -43,6 +65,7 @@ public class PlayArea extends JPanel
 		m_rowKeys = applet.rowKeys();
 		m_colKeys = applet.colKeys();
 		m_numNeededColors = applet.numNeededColors();
+		m_numShortcuts = Math.min( m_numNeededColors, left.length );
 		m_neededColors = applet.neededColors();
 
 		// Fill in the permanent sizes
@@ -51,14 +74,21 @@ public class PlayArea extends JPanel
 		m_numKeyRows  = m_colKeys.getMaxSize();
 		m_numKeyCols  = m_rowKeys.getMaxSize();
 
+		m_undo = new UndoLog( m_grid, UNDO_SIZE );
+
 		m_numTotalRows = m_numGridRows + m_numKeyRows;
 		m_numTotalCols = m_numGridCols + m_numKeyCols;
 
+		m_large = applet.large() ||
+			Math.max(m_numGridRows, m_numGridCols) > LARGE_SIZE;
+
 		// Make the objects we need for the GUI
 		String hint = new String("Shortcuts:");
-		for (int i=0; i<m_numNeededColors; i++) {
+		for (int i=0; i<m_numShortcuts; i++) {
 			hint += "  "+m_neededColors[i].name()+": "+left[i]+" or "+right[i];
 		}
+		if ( m_large )	hint += "  zoom: + or -";
+		hint += "  undo: ^Z  redo: ^Y  hint: ?";
 		m_status = new JLabel(hint);
 
 		m_colorPanel = new ColorPanel();
@@ -69,7 +99,23 @@ public class PlayArea extends JPanel
 		setLayout( new BorderLayout() );
 		add( m_status, BorderLayout.NORTH);
 		add( m_colorPanel, BorderLayout.WEST);
-		add( m_playGrid, BorderLayout.CENTER );
+		if ( m_large ) {
+			m_rowRuler = new KeyRuler( m_rowKeys, true, m_numKeyCols );
+			m_colRuler = new KeyRuler( m_colKeys, false, m_numKeyRows );
+			m_scroller = new JScrollPane( m_playGrid );
+			m_scroller.setRowHeaderView( m_rowRuler );
+			m_scroller.setColumnHeaderView( m_colRuler );
+			m_scroller.getViewport().setBackground( Color.gray );
+			JPanel corner = new JPanel();
+			corner.setBackground( Color.gray );
+			m_scroller.setCorner( JScrollPane.UPPER_LEFT_CORNER, corner );
+			m_scroller.getVerticalScrollBar().setUnitIncrement( m_zoom );
+			m_scroller.getHorizontalScrollBar().setUnitIncrement( m_zoom );
+			add( m_scroller, BorderLayout.CENTER );
+		}
+		else {
+			add( m_playGrid, BorderLayout.CENTER );
+		}
 
 		// Start out using white
 		m_colorPanel.cButton[1].doClick();
@@ -85,6 +131,61 @@ public class PlayArea extends JPanel
 	public Color getColor() { return m_currentColor; }
 	public void setColor(Color newColor) { m_currentColor = newColor; }
 
+	// Change the size of the squares in large mode, keeping whatever is
+	// in the middle of the viewport where it is.
+	public void setZoom( int zoom )
+	{
+		zoom = Math.max( MIN_ZOOM, Math.min(MAX_ZOOM, zoom) );
+		if ( !m_large  ||  zoom == m_zoom )	return;
+
+		JViewport viewport = m_scroller.getViewport();
+		Point p = viewport.getViewPosition();
+		Dimension extent = viewport.getExtentSize();
+		double x = (p.x + extent.width/2.0) / m_zoom;
+		double y = (p.y + extent.height/2.0) / m_zoom;
+
+		m_zoom = zoom;
+		m_playGrid.setSizes();
+		m_rowRuler.setSizes();
+		m_colRuler.setSizes();
+		m_scroller.getVerticalScrollBar().setUnitIncrement( m_zoom );
+		m_scroller.getHorizontalScrollBar().setUnitIncrement( m_zoom );
+		m_scroller.validate();
+
+		viewport.setViewPosition( new Point(
+			Math.max( 0, (int)(x*m_zoom) - extent.width/2 ),
+			Math.max( 0, (int)(y*m_zoom) - extent.height/2 ) ) );
+		m_scroller.repaint();
+	}
+
+	// Paint one number of a key, centered in its square.  Squares too
+	// small to read just show whether the number is right.  Keys for lines
+	// that can no longer be finished are framed in red.
+	private void paintKey( Graphics g, FontMetrics fm, Keyarray ka,
+						   int i, int j, int x, int y, int xinc, int yinc )
+	{
+		g.setColor( ka.getBgColor(i,j) );
+		g.fillRect( x, y, xinc-1, yinc-1 );
+		if ( !ka.isFeasible(i) ) {
+			g.setColor( Color.red );
+			g.drawRect( x, y, xinc-2, yinc-2 );
+		}
+		if ( yinc < 8 )	return;
+
+		String number = ""+ka.getNumber(i,j);
+		g.setColor( ka.getFgColor(i,j) );
+		g.drawString( number, x + (xinc-1 - fm.stringWidth(number))/2,
+					  y + (yinc-1 - fm.getHeight())/2 + fm.getAscent() );
+	}
+
+	// The font for numbers in squares of a given size.
+	private Font keyFont( int size )
+	{
+		Font font = UIManager.getFont("Label.font");
+		if ( m_large )	font = font.deriveFont( (float)Math.max(6, size*2/3) );
+		return font;
+	}
+
 
 	//=========================================
 	// Internal class for the Key listener
@@ -93,13 +194,25 @@ public class PlayArea extends JPanel
 		public void keyTyped(KeyEvent e) {
 
  			char c = e.getKeyChar();
-			for (int i=0; i<m_numNeededColors; i++) {
+			for (int i=0; i<m_numShortcuts; i++) {
 				if ( c == left[i]  ||  c == right[i] ) {
 					m_colorPanel.cButton[i].doClick();
 				}
 			}
+			if		( c == '+' || c == '=' )	setZoom( m_zoom + 2 );
+			else if ( c == '-' )				setZoom( m_zoom - 2 );
+			else if ( c == '?' )				m_playGrid.showHint();
 		} 
-		public void keyPressed(KeyEvent e) { }
+		public void keyPressed(KeyEvent e) {
+			if ( !e.isControlDown() )	return;
+			if ( e.getKeyCode() == KeyEvent.VK_Z ) {
+				if ( e.isShiftDown() )	m_playGrid.redo();
+				else					m_playGrid.undo();
+			}
+			else if ( e.getKeyCode() == KeyEvent.VK_Y ) {
+				m_playGrid.redo();
+			}
+		}
 		public void keyReleased(KeyEvent e) { }
 	}
 
@@ -160,7 +273,7 @@ public class PlayArea extends JPanel
 				m_group.add(this);
 				setActionCommand(color.name());
 				addActionListener(m_listener);
-				addKeyListener(new MyKeyListener());
+				addKeyListener(m_keyListener);
 			}
 		}
 
@@ -207,13 +320,15 @@ public class PlayArea extends JPanel
 
 	//=====================================
 	// Internal class for showing the grid.
+	// The squares and the numbers are all painted straight from the
+	// Grid and the Keyarrays, and the mouse is tracked by working out
+	// which square it's over, so there's nothing here per square.
 	//=====================================
-	private class PlayGrid extends JPanel implements MouseListener
+	private class PlayGrid extends JComponent
+		implements MouseListener, MouseMotionListener, MouseWheelListener
 	{
-		// GUI objects
-		private PictureSquare	m_squares[][];
-		private JLabel			m_rowLabels[][];
-		private JLabel			m_colLabels[][];
+		// preferred size of a square
+		private static final int CELL_SIZE = 20;
 
 		// Stuff to remember between mouseDown and mouseUp
 		boolean	m_down;
@@ -221,65 +336,136 @@ public class PlayArea extends JPanel
 		int		m_downRow,		m_downColumn;
 		int		m_currentRow,	m_currentColumn;
 
+		// the last hint, outlined until the next change
+		HintEngine.Hint	m_hint;
+
+		// Drags come in much faster than the screen can show them, so we
+		// just remember the latest square and catch up once per frame.
+		private static final int FRAME_MILLIS = 16;
+		int		m_dragRow,		m_dragColumn;
+		Timer	m_dragTimer;
+
 		private final Color	m_background = Color.gray;
 
+		// In large mode the keys are in the rulers, so only the squares
+		// of the picture are shown here.
+		private int		m_rowsShown,	m_colsShown;
+
 		// Constructor
 		public PlayGrid()
 		{
+			m_rowsShown = (m_large) ? m_numGridRows : m_numTotalRows;
+			m_colsShown = (m_large) ? m_numGridCols : m_numTotalCols;
+
+			setOpaque(true);
 			setBackground( m_background );
-			setLayout( new GridLayout(m_numTotalRows,m_numTotalCols,1,1) );
+			setSizes();
+			setFocusable(true);
+
+			addMouseListener(this);
+			addMouseMotionListener(this);
+			addKeyListener(m_keyListener);
+			if ( m_large )	addMouseWheelListener(this);
 
-			m_squares	= new PictureSquare[m_numGridRows][m_numGridCols];
-			m_rowLabels = new JLabel[m_numGridRows][m_numKeyCols];
-			m_colLabels = new JLabel[m_numGridCols][m_numKeyRows];
+			m_dragTimer = new Timer( FRAME_MILLIS, new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					myMouseDragged( m_dragRow, m_dragColumn );
+				}
+			});
+			m_dragTimer.setRepeats(false);
+		}
+
+		public void setSizes()
+		{
+			int size = (m_large) ? m_zoom : CELL_SIZE;
+			setFont( keyFont(size) );
+			setPreferredSize( new Dimension(m_colsShown*size, m_rowsShown*size) );
+			revalidate();
+		}
 
-			for ( int r=0; r<m_numTotalRows; r++ ) {
-				for ( int c=0; c<m_numTotalCols; c++ ) {
+		// Sizes of a square, including the one-pixel gap after it.
+		private int xinc()
+		{
+			if ( m_large )	return m_zoom;
+			return Math.max(1, getWidth() / m_numTotalCols);
+		}
+
+		private int yinc()
+		{
+			if ( m_large )	return m_zoom;
+			return Math.max(1, getHeight() / m_numTotalRows);
+		}
+
+		public void paintComponent(Graphics g)
+		{
+			Dimension d	= getSize();
+			Rectangle clip = g.getClipBounds();
+			if ( clip == null )	clip = new Rectangle( 0, 0, d.width, d.height );
+
+			int inc = 4;
+			int xinc = xinc();
+			int yinc = yinc();
+
+			g.setColor( getBackground() );
+			g.fillRect( clip.x, clip.y, clip.width, clip.height );
+
+			// Only look at the rows and columns that need painting.
+			int firstRow = Math.max( 0, clip.y / yinc );
+			int lastRow  = Math.min( m_rowsShown-1,
+									 (clip.y + clip.height) / yinc );
+			int firstCol = Math.max( 0, clip.x / xinc );
+			int lastCol  = Math.min( m_colsShown-1,
+									 (clip.x + clip.width) / xinc );
+
+			FontMetrics fm = g.getFontMetrics();
+			for ( int r=firstRow; r<=lastRow; r++ ) {
+				for ( int c=firstCol; c<=lastCol; c++ ) {
 
 					// the squares that make up the picture
 					if ( r < m_numGridRows  &&  c < m_numGridCols ) {
-						PictureSquare square = new PictureSquare(r,c);
-						m_squares[r][c] = square;
-						add(square);
+						g.setColor( m_grid.getVisibleColor(r,c) );
+						g.fillRect( c*xinc, r*yinc, xinc-1, yinc-1 );
 					}
 
 					// the numbers to the right of the grid
-					else if ( r < m_numGridRows && 
+					else if ( r < m_numGridRows &&
 							  (c - m_numGridCols) < m_rowKeys.getSize(r) ) {
-						int col = c - m_numGridCols;
-						m_rowLabels[r][col] = makeKeyLabel(m_rowKeys, r, col);
+						paintKey( g, fm, m_rowKeys, r, c - m_numGridCols,
+								  c*xinc, r*yinc, xinc, yinc );
 					}
 
 					// the numbers below the grid
-					else if ( c < m_numGridCols && 
+					else if ( c < m_numGridCols &&
 							  (r - m_numGridRows) < m_colKeys.getSize(c) ) {
-						int row = r - m_numGridRows;
-						m_colLabels[c][row] = makeKeyLabel(m_colKeys, c, row);
+						paintKey( g, fm, m_colKeys, c, r - m_numGridRows,
+								  c*xinc, r*yinc, xinc, yinc );
 					}
 
-					// leftover space (that we have to put something into 
-					// to keep the GridLayout happy)
-					else add(new JLabel());
+					// leftover space just shows the background
 				}
 			}
-		}
-
-		public void paintComponent(Graphics g)
-		{
-			super.paintComponent(g);
-			Dimension d	= getSize();
-
-			int inc = 4;
-			int xinc = d.width / m_numTotalCols;
-			int yinc = d.height / m_numTotalRows;
 
 			// draw a darker line on every 4th row and column
 			g.setColor( getBackground().darker().darker() );
-			for ( int r=0; r<=m_numGridRows; r+=inc ) {
-				g.drawLine(0, ((r*yinc)-1), d.width, ((r*yinc)-1));
+			for ( int r=firstRow-firstRow%inc; r<=Math.min(lastRow+1, m_numGridRows); r+=inc ) {
+				g.drawLine(clip.x, ((r*yinc)-1), clip.x+clip.width, ((r*yinc)-1));
 			}
-			for ( int c=0; c<=m_numGridCols; c+=inc ) {
-				g.drawLine(((c*xinc)-1), 0, ((c*xinc)-1), d.height);
+			for ( int c=firstCol-firstCol%inc; c<=Math.min(lastCol+1, m_numGridCols); c+=inc ) {
+				g.drawLine(((c*xinc)-1), clip.y, ((c*xinc)-1), clip.y+clip.height);
+			}
+
+			// Outline the squares of a hint, or the whole line if it's wrong.
+			if ( m_hint != null ) {
+				g.setColor( (m_hint.isImpossible()) ? Color.red : Color.cyan );
+				if ( m_hint.isImpossible() ) {
+					Rectangle rect = hintSquares();
+					g.drawRect( ((rect.x*xinc)-1), ((rect.y*yinc)-1),
+								(rect.width*xinc), (rect.height*yinc) );
+				}
+				for ( int i=0; i<m_hint.getNumSquares(); i++ ) {
+					g.drawRect( ((m_hint.getCol(i)*xinc)-1), ((m_hint.getRow(i)*yinc)-1),
+								xinc, yinc );
+				}
 			}
 
 			// If we're dragging, draw a rubberband
@@ -292,25 +478,31 @@ public class PlayArea extends JPanel
 
 		}
 
-
 		// Public methods:
 		//================
-		public void myMouseDown( PictureSquare s )
+		public void myMouseDown( int row, int col )
 		{
 			m_down  = true;
-			m_downRow	 = s.row();
-			m_downColumn = s.col();
+			m_downRow	 = row;
+			m_downColumn = col;
 
-			repaint(); // to show the rubberband
+			repaint( squaresToPixels( buttonsSelected() ) ); // to show the rubberband
 		}
 
-		public void myMouseDragged( PictureSquare s )
+		public void myMouseDragged( int row, int col )
 		{
 			if ( m_down ) {
+				Rectangle old = buttonsSelected();
 				m_dragged = true;
-				m_currentRow = s.row();
-				m_currentColumn = s.col();
-				repaint(); // to show the rubberband
+				m_currentRow = row;
+				m_currentColumn = col;
+
+				// move the rubberband
+				Rectangle rect = buttonsSelected();
+				if ( !rect.equals(old) ) {
+					paintOutline( old );
+					paintOutline( rect );
+				}
 			}
 		}
 
@@ -320,45 +512,130 @@ public class PlayArea extends JPanel
 			m_down = false;
 			m_dragged = false;
 
-			// color the selected buttons
-			for ( int r=rect.y; r<(rect.y+rect.height); r++ ) {
+			// remember what was there, so that it can be undone
+			int newIndex = m_grid.paletteIndex( m_currentColor );
+			boolean changes = m_undo.record( rect, newIndex );
+
+			// color the selected squares, keeping track of which ones change
+			int minRow = m_numGridRows,	maxRow = -1;
+			int minCol = m_numGridCols,	maxCol = -1;
+			for ( int r=rect.y; changes && r<(rect.y+rect.height); r++ ) {
 				for ( int c=rect.x; c<(rect.x+rect.width); c++ ) {
-					m_grid.setVisibleColor( r, c, m_currentColor );
-					m_squares[r][c].setBackground( m_currentColor );
+					if ( m_grid.getVisibleIndex(r,c) != newIndex ) {
+						m_grid.setVisibleIndex( r, c, newIndex );
+						minRow = Math.min( minRow, r );	maxRow = Math.max( maxRow, r );
+						minCol = Math.min( minCol, c );	maxCol = Math.max( maxCol, c );
+					}
 				}
 			}
 
+			// rub out the rubberband
+			paintOutline( rect );
+
+			if ( maxRow >= 0 ) {
+				squaresChanged( new Rectangle( minCol, minRow,
+											   maxCol-minCol+1, maxRow-minRow+1 ) );
+			}
+		}
+
+		// Undo or redo the last fill.
+		public void undo()	{ if ( !m_down )	squaresChanged( m_undo.undo() ); }
+		public void redo()	{ if ( !m_down )	squaresChanged( m_undo.redo() ); }
+
+		// Show the next square(s) that can be worked out from the board.
+		public void showHint()
+		{
+			if ( m_down )	return;
+			if ( m_hints == null )
+				m_hints = new HintEngine( m_grid, m_rowKeys, m_colKeys,
+					ColorLineSolver.palette( m_neededColors, m_numNeededColors ) );
+
+			clearHint();
+			m_hint = m_hints.nextHint();
+			if ( m_hint == null ) {
+				showStatus("No hint: nothing more follows from the lines alone");
+				return;
+			}
+			showStatus("Hint: " + m_hint);
+			paintImmediately( squaresToPixels( hintSquares() ) );
+		}
+
+		private void clearHint()
+		{
+			if ( m_hint == null )	return;
+			Rectangle rect = hintSquares();
+			m_hint = null;
+			paintImmediately( squaresToPixels(rect) );
+		}
+
+		// The squares a hint covers: the forced ones, or the whole line.
+		private Rectangle hintSquares()
+		{
+			if ( m_hint.isImpossible() ) {
+				if ( m_hint.forRow() )
+					return new Rectangle( 0, m_hint.getIndex(), m_numGridCols, 1 );
+				else
+					return new Rectangle( m_hint.getIndex(), 0, 1, m_numGridRows );
+			}
+			Rectangle rect = new Rectangle( m_hint.getCol(0), m_hint.getRow(0), 1, 1 );
+			for ( int i=1; i<m_hint.getNumSquares(); i++ )
+				rect.add( new Rectangle( m_hint.getCol(i), m_hint.getRow(i), 1, 1 ) );
+			return rect;
+		}
+
+		// Bring the keys and the screen up to date after some squares
+		// have changed.
+		private void squaresChanged( Rectangle changed )
+		{
+			if ( changed == null )	return;
+			clearHint();
+			int minRow = changed.y,	maxRow = changed.y + changed.height - 1;
+			int minCol = changed.x,	maxCol = changed.x + changed.width - 1;
+
+			if ( m_hints != null )
+				m_hints.squaresChanged( minRow, maxRow, minCol, maxCol );
+
 			// recolor any keys that have changed
-			for ( int r=rect.y; r<(rect.y+rect.height); r++ ) {
+			for ( int r=minRow; r<=maxRow; r++ ) {
 				m_rowKeys.setColors( r );
-				for ( int c=0; c<m_rowKeys.getSize(r); c++ ) {
-					m_rowLabels[r][c].setBackground(m_rowKeys.getBgColor(r,c));
-				}
 			}
-			for ( int c=rect.x; c<(rect.x+rect.width); c++ ) {
+			for ( int c=minCol; c<=maxCol; c++ ) {
 				m_colKeys.setColors( c );
-				for ( int r=0; r<m_colKeys.getSize(c); r++ ) {
-					m_colLabels[c][r].setBackground(m_colKeys.getBgColor(c,r));
-				}
 			}
 
-			// check to see if we've solved the puzzle
+			// Paint the squares and the two strips of keys one at a time;
+			// repaint() would lump them together into one big rectangle
+			// covering most of the board.
+			paintImmediately( squaresToPixels(changed) );
+			if ( m_large ) {
+				m_rowRuler.paintKeys( minRow, maxRow );
+				m_colRuler.paintKeys( minCol, maxCol );
+			}
+			else {
+				paintImmediately( rowKeyPixels(changed) );
+				paintImmediately( colKeyPixels(changed) );
+			}
+
+			// check to see if we've solved the puzzle, or made a mistake
 			if ( m_grid.isSolved() ) {
 				showStatus("Congratulations, you have drawn " + filename());
+				return;
+			}
+			for ( int r=minRow; r<=maxRow; r++ ) {
+				if ( !m_rowKeys.isFeasible(r) ) {
+					showStatus("Row " + (r+1) + " can't be finished as drawn");
+					return;
+				}
+			}
+			for ( int c=minCol; c<=maxCol; c++ ) {
+				if ( !m_colKeys.isFeasible(c) ) {
+					showStatus("Column " + (c+1) + " can't be finished as drawn");
+					return;
+				}
 			}
 		}
 
 		// Private methods
-		private JLabel makeKeyLabel( Keyarray ka, int i, int j )
-		{
-			JLabel l = new JLabel( ""+ka.getNumber(i,j), JLabel.CENTER );
-			l.setOpaque(true);
-			l.setBackground( ka.getBgColor(i,j) );
-			l.setForeground( ka.getFgColor(i,j) );
-			add(l);
-			return l;
-		}
-
 		private Rectangle buttonsSelected()
 		{
 			if ( m_dragged )
@@ -370,93 +647,198 @@ public class PlayArea extends JPanel
 				return new Rectangle( m_downColumn, m_downRow, 1, 1 );
 		}
 
+		// The area covered by a block of squares, including the lines
+		// around it (which is where the rubberband goes).
+		private Rectangle squaresToPixels( Rectangle squares )
+		{
+			int xinc = xinc();
+			int yinc = yinc();
+			return new Rectangle( (squares.x*xinc)-1, (squares.y*yinc)-1,
+								  (squares.width*xinc)+1, (squares.height*yinc)+1 );
+		}
 
-		//======================================================
-		// Internal class for the squares of the picture
-		// (This has to be a button to make it listen to keys.)
-		//======================================================
-		private class PictureSquare extends JButton
-			implements MouseListener, MouseMotionListener
+		// The keys to the right of some rows, and below some columns.
+		private Rectangle rowKeyPixels( Rectangle squares )
 		{
-			private final int m_row;
-			private final int m_col;
+			Rectangle r = squaresToPixels( squares );
+			r.x = (m_numGridCols*xinc())-1;
+			r.width = getWidth() - r.x;
+			return r;
+		}
 
-			// constructor
-			public PictureSquare( int r, int c ) 
-			{
-				m_row = r;
-				m_col = c;
-				setOpaque(true);
-				setBackground(m_grid.getVisibleColor( m_row, m_col ));
+		private Rectangle colKeyPixels( Rectangle squares )
+		{
+			Rectangle r = squaresToPixels( squares );
+			r.y = (m_numGridRows*yinc())-1;
+			r.height = getHeight() - r.y;
+			return r;
+		}
 
-				// Make it look not like a button
-				setBorderPainted(false);
+		// Paint just the edges of a block of squares, to draw or rub out
+		// the rubberband without touching the squares inside it.
+		private void paintOutline( Rectangle squares )
+		{
+			Rectangle r = squaresToPixels( squares );
+			paintImmediately( r.x, r.y, r.width, 1 );
+			paintImmediately( r.x, r.y+r.height-1, r.width, 1 );
+			paintImmediately( r.x, r.y, 1, r.height );
+			paintImmediately( r.x+r.width-1, r.y, 1, r.height );
+		}
 
-				addMouseListener(this);
-				addMouseMotionListener(this);
-				addKeyListener(new MyKeyListener());
-			}
+		// The row and column of the square under the mouse, kept inside
+		// the picture.
+		private int rowAt( MouseEvent e )
+		{
+			return Math.max( 0, Math.min(m_numGridRows-1, e.getY() / yinc()) );
+		}
 
-			public int row() { return m_row; }
-			public int col() { return m_col; }
+		private int colAt( MouseEvent e )
+		{
+			return Math.max( 0, Math.min(m_numGridCols-1, e.getX() / xinc()) );
+		}
 
-			// The PictureSquare has to know:
-			// if the mouse is pressed in it (to start a selection),
-			// if the mouse is dragged through it (to extend the selection),
-			// and if the mouse is released in it (to finish the selection).
-			// (mouseExited or mouseEntered would be better to detect a
-			// dragging, except that they aren't fired when the button is
-			// held down.)
+		private boolean inPicture( MouseEvent e )
+		{
+			return e.getX() >= 0 && e.getY() >= 0 &&
+				e.getX() / xinc() < m_numGridCols &&
+				e.getY() / yinc() < m_numGridRows;
+		}
 
-			// These methods are required by MouseListener.
-			public void mouseClicked(MouseEvent e){;}
-			public void mouseExited(MouseEvent e){;}
-			public void mouseEntered(MouseEvent e) {;}
+		// The PlayGrid has to know:
+		// if the mouse is pressed in a square (to start a selection),
+		// if the mouse is dragged through the squares (to extend it),
+		// and when the mouse is released (to finish the selection).
 
-			public void mousePressed(MouseEvent e)
-			{
-				myMouseDown( this );
-			}
+		// These methods are required by MouseListener.
+		public void mouseClicked(MouseEvent e){;}
+		public void mouseExited(MouseEvent e){;}
+		public void mouseEntered(MouseEvent e) {;}
 
-			public void mouseReleased(MouseEvent e)
-			{
+		public void mousePressed(MouseEvent e)
+		{
+			requestFocusInWindow(); // for the shortcut keys
+			if ( inPicture(e) )	myMouseDown( rowAt(e), colAt(e) );
+		}
+
+		public void mouseReleased(MouseEvent e)
+		{
+			if ( m_down ) {
+				// catch up with any drag we haven't shown yet
+				if ( m_dragTimer.isRunning() ) {
+					m_dragTimer.stop();
+					myMouseDragged( m_dragRow, m_dragColumn );
+				}
 				myMouseUp();
 			}
+		}
 
-			// These methods are required by MouseMotionListener.
-			public void mouseMoved(MouseEvent e){;}
+		// These methods are required by MouseMotionListener.
+		public void mouseMoved(MouseEvent e){;}
 
-			public void mouseDragged(MouseEvent e)
-			{
-				myMouseDragged( getSquare(e) );
+		// This is required by MouseWheelListener.  With the control key
+		// down, the wheel zooms; otherwise it goes on to scroll as usual.
+		public void mouseWheelMoved(MouseWheelEvent e)
+		{
+			if ( e.isControlDown() ) {
+				setZoom( m_zoom - 2*e.getWheelRotation() );
 			}
-
-			// Convenience function for figuring out the square under the mouse
-			private PictureSquare getSquare(MouseEvent e)
-			{
-				int x = e.getX() + e.getComponent().getX();
-				int y = e.getY() + e.getComponent().getY();
-				return (PictureSquare)getParent().getComponentAt(x,y);
+			else {
+				m_scroller.dispatchEvent(
+					SwingUtilities.convertMouseEvent( this, e, m_scroller ) );
 			}
+		}
 
+		public void mouseDragged(MouseEvent e)
+		{
+			m_dragRow = rowAt(e);
+			m_dragColumn = colAt(e);
+			if ( !m_dragTimer.isRunning() )	m_dragTimer.start();
 		}
 
-		// The PlayGrid only has to know if the mouse is released in it.
-		// This is because if the user drags the mouse to the trough
-		// between PictureSquares before releasing it, then none of the
-		// PictureSquares will detect the release.
+	}
 
-		// These methods are required by MouseListener.
-		public void mouseClicked(MouseEvent e){;}
-		public void mouseExited(MouseEvent e){;}
-		public void mouseEntered(MouseEvent e) {;}
-		public void mousePressed(MouseEvent e) {;}
+	//=====================================
+	// Internal class for the keys in large mode.
+	// The row keys go down the left of the viewport and the column keys
+	// across the top, pushed up against the squares, and only the ones
+	// that can be seen are painted.
+	//=====================================
+	private class KeyRuler extends JComponent
+	{
+		private Keyarray	m_keys;
+		private boolean		m_forRow;
+		private int			m_depth;	// the most numbers in any key
 
-		public void mouseReleased(MouseEvent e)
+		// Constructor
+		public KeyRuler( Keyarray keys, boolean forRow, int depth )
+		{
+			m_keys = keys;
+			m_forRow = forRow;
+			m_depth = Math.max( 1, depth );
+
+			setOpaque(true);
+			setBackground( Color.gray );
+			setSizes();
+		}
+
+		public void setSizes()
 		{
-			myMouseUp();
+			setFont( keyFont(m_zoom) );
+			int length = m_keys.getNumKeys() * m_zoom;
+			int depth = m_depth * m_zoom;
+			if ( m_forRow )	setPreferredSize( new Dimension(depth, length) );
+			else			setPreferredSize( new Dimension(length, depth) );
+			revalidate();
 		}
 
+		// Paint the keys for some rows or columns straight away.
+		public void paintKeys( int first, int last )
+		{
+			int start = (first*m_zoom)-1;
+			int length = ((last-first+1)*m_zoom)+1;
+			if ( m_forRow )	paintImmediately( 0, start, getWidth(), length );
+			else			paintImmediately( start, 0, length, getHeight() );
+		}
+
+		public void paintComponent(Graphics g)
+		{
+			Rectangle clip = g.getClipBounds();
+			if ( clip == null )	clip = new Rectangle( getSize() );
+
+			g.setColor( getBackground() );
+			g.fillRect( clip.x, clip.y, clip.width, clip.height );
+
+			// Work along the rows or columns, and across the numbers.
+			int along  = (m_forRow) ? clip.y : clip.x;
+			int alongLength = (m_forRow) ? clip.height : clip.width;
+			int across = (m_forRow) ? clip.x : clip.y;
+			int acrossLength = (m_forRow) ? clip.width : clip.height;
+
+			int first = Math.max( 0, along / m_zoom );
+			int last  = Math.min( m_keys.getNumKeys()-1,
+								  (along + alongLength) / m_zoom );
+			int firstSlot = Math.max( 0, across / m_zoom );
+			int lastSlot  = Math.min( m_depth-1,
+									  (across + acrossLength) / m_zoom );
+
+			FontMetrics fm = g.getFontMetrics();
+			for ( int i=first; i<=last; i++ ) {
+				int skip = m_depth - m_keys.getSize(i);
+				for ( int slot=Math.max(firstSlot, skip); slot<=lastSlot; slot++ ) {
+					int x = (m_forRow) ? slot*m_zoom : i*m_zoom;
+					int y = (m_forRow) ? i*m_zoom : slot*m_zoom;
+					paintKey( g, fm, m_keys, i, slot-skip, x, y, m_zoom, m_zoom );
+				}
+			}
+
+			// line up the darker lines with the ones on the squares
+			g.setColor( getBackground().darker().darker() );
+			for ( int i=first-first%4; i<=last+1; i+=4 ) {
+				int p = (i*m_zoom)-1;
+				if ( m_forRow )	g.drawLine( clip.x, p, clip.x+clip.width, p );
+				else			g.drawLine( p, clip.y, p, clip.y+clip.height );
+			}
+		}
 	}
 
 }
@@ -0,0 +1,265 @@
+//
+//
+// Portfolio
+//
+// Solves a puzzle by racing several strategies against each other, since
+// which one is quickest varies a lot from puzzle to puzzle: line logic
+// alone, probing, and search with the rows solved first or the columns
+// solved first.  Each strategy gets its own Solver, built from the same
+// clues, and its own thread.  The first to come back with a definite
+// answer wins, and the rest are cancelled; they notice between lines and
+// give up.
+//
+// The threads are virtual if the JVM has them (Java 21 on), found by
+// reflection so that this still builds and runs on older ones, which get
+// ordinary daemon threads instead.
+//
+// How often each strategy wins, how long its wins took, and how often it
+// failed by throwing, is kept over every race, and main() reports it at
+// the end.
+//
+// usage: java Portfolio [-millis n] [directory or file]...
+//
+import java.awt.Color;
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.*;
+
+class Portfolio
+{
+	// the strategies
+	static final int	LINES		= 0;
+	static final int	PROBING		= 1;
+	static final int	ROWS_FIRST	= 2;
+	static final int	COLS_FIRST	= 3;
+	static final String	NAMES[] =
+		{ "lines", "probing", "search-rows", "search-cols" };
+
+	// the result of a strategy that threw
+	static final int	FAILED = -2;
+
+	// how long main() lets a race go on for
+	static final long	MAX_MILLIS = 10000;
+
+	// Thread.ofVirtual(), and the Thread.Builder methods to name and start
+	// a thread with it, or null if there are no virtual threads.
+	static Method	s_ofVirtual;
+	static Method	s_name;
+	static Method	s_start;
+
+	static {
+		try {
+			s_ofVirtual = Thread.class.getMethod( "ofVirtual" );
+			Class builder = Class.forName( "java.lang.Thread$Builder" );
+			s_name = builder.getMethod( "name", String.class );
+			s_start = builder.getMethod( "start", Runnable.class );
+		}
+		catch ( Exception e ) {
+			s_ofVirtual = null;
+		}
+	}
+
+	// wins for each strategy over every race so far
+	static int	s_races;
+	static int	s_wins[] = new int[NAMES.length];
+	static long	s_winMicros[] = new long[NAMES.length];
+	static int	s_failures[] = new int[NAMES.length];
+
+	// private variables
+	Keyarray	m_rowKeys;
+	Keyarray	m_colKeys;
+	Solver		m_solvers[];
+	int			m_results[];	// from each strategy, or -1 while it runs
+	RuntimeException	m_errors[];	// what each failed strategy threw
+	int			m_numFinished;
+	int			m_numFailed;
+	int			m_winner = -1;
+	long		m_micros;
+
+	// constructor
+	public Portfolio( Keyarray rowKeys, Keyarray colKeys ) {
+		m_rowKeys = rowKeys;
+		m_colKeys = colKeys;
+	}
+
+	// methods
+	public int		getWinner()		{ return m_winner; }
+	public String	getWinnerName()	{ return ( m_winner < 0 ) ? "none" : NAMES[m_winner]; }
+	public long		getMicros()		{ return m_micros; }
+	public int		getResult( int strategy )	{ return m_results[strategy]; }
+	public RuntimeException	getError( int strategy )	{ return m_errors[strategy]; }
+
+	// Did every strategy fail?
+	public boolean	allFailed()	{ return m_numFailed == NAMES.length; }
+
+	// The winner's solver, to read the solution from, or null.
+	public Solver	getSolver()	{ return ( m_winner < 0 ) ? null : m_solvers[m_winner]; }
+
+	// Race the strategies, for at most the given number of milliseconds.
+	// Returns the winner's result, or STUCK if none of them got anywhere.
+	public int solve( long millis ) {
+		m_solvers = new Solver[NAMES.length];
+		m_results = new int[NAMES.length];
+		m_errors = new RuntimeException[NAMES.length];
+		m_numFailed = 0;
+		for ( int i=0; i<NAMES.length; i++ ) {
+			m_solvers[i] = new Solver( m_rowKeys, m_colKeys );
+			m_results[i] = -1;
+		}
+		m_solvers[COLS_FIRST].setColumnsFirst( true );
+
+		long start = System.nanoTime();
+		long deadline = start + millis*1000000;
+		Thread threads[] = new Thread[NAMES.length];
+		for ( int i=0; i<NAMES.length; i++ ) {
+			final int strategy = i;
+			threads[i] = startThread( new Runnable() {
+				public void run() { race( strategy ); }
+			}, "Portfolio-" + NAMES[i] );
+		}
+
+		// Wait for a winner, for everyone to give up, or for time to run out.
+		synchronized ( this ) {
+			try {
+				long left;
+				while ( m_winner < 0 && m_numFinished < NAMES.length &&
+						(left = deadline - System.nanoTime()) > 0 )
+					wait( Math.max( 1, left / 1000000 ) );
+			}
+			catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		m_micros = (System.nanoTime() - start) / 1000;
+
+		// Stop the others, and let them finish giving up.
+		for ( int i=0; i<NAMES.length; i++ )	m_solvers[i].cancel();
+		for ( int i=0; i<NAMES.length; i++ ) {
+			try {
+				threads[i].join();
+			}
+			catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		synchronized ( Portfolio.class ) {
+			s_races++;
+			if ( m_winner >= 0 ) {
+				s_wins[m_winner]++;
+				s_winMicros[m_winner] += m_micros;
+			}
+			for ( int i=0; i<NAMES.length; i++ ) {
+				if ( m_results[i] == FAILED )	s_failures[i]++;
+			}
+		}
+		return ( m_winner < 0 ) ? Solver.STUCK : m_results[m_winner];
+	}
+
+	// What the threads are: virtual or platform.
+	static String threadKind() {
+		return ( s_ofVirtual != null ) ? "virtual" : "platform";
+	}
+
+	// The wins so far, one line per strategy.
+	static synchronized String report() {
+		StringBuffer sb = new StringBuffer();
+		sb.append( s_races + " races on " + threadKind() + " threads\n" );
+		for ( int i=0; i<NAMES.length; i++ ) {
+			long average = ( s_wins[i] == 0 ) ? 0 : s_winMicros[i] / s_wins[i];
+			sb.append( NAMES[i] + "\t" + s_wins[i] + " wins\t" +
+					   average + "us average\t" + s_failures[i] + " failed\n" );
+		}
+		return sb.toString();
+	}
+
+	// Private methods
+
+	// Run one strategy, and note its result.  Only a definite answer can
+	// win: line logic or probing getting stuck just drops out of the race,
+	// and so does a strategy that throws, once what it threw is kept.
+	private void race( int strategy ) {
+		Solver solver = m_solvers[strategy];
+		int result = FAILED;
+		try {
+			switch ( strategy ) {
+			case LINES:		result = solver.solve();	break;
+			case PROBING:	result = solver.probe();	break;
+			default:		result = solver.search( Long.MAX_VALUE );	break;
+			}
+		}
+		catch ( RuntimeException e ) {
+			m_errors[strategy] = e;
+		}
+		finally {
+			synchronized ( this ) {
+				m_results[strategy] = result;
+				m_numFinished++;
+				if ( result == FAILED )	m_numFailed++;
+				else if ( m_winner < 0 && result != Solver.STUCK )
+					m_winner = strategy;
+				notifyAll();
+			}
+		}
+	}
+
+	// Start a thread: a virtual one if we can, or else a daemon.
+	private static Thread startThread( Runnable r, String name ) {
+		if ( s_ofVirtual != null ) {
+			try {
+				Object builder = s_ofVirtual.invoke( null );
+				builder = s_name.invoke( builder, name );
+				return (Thread)s_start.invoke( builder, r );
+			}
+			catch ( Exception e ) {
+				// e.g. a preview JVM without --enable-preview
+				s_ofVirtual = null;
+			}
+		}
+		Thread thread = new Thread( r, name );
+		thread.setDaemon( true );
+		thread.start();
+		return thread;
+	}
+
+	public static void main( String args[] ) throws Exception {
+		long millis = MAX_MILLIS;
+		Vector found = new Vector();
+		for ( int i=0; i<args.length; i++ ) {
+			if ( args[i].equals("-millis") && i+1 < args.length )
+				millis = Long.parseLong( args[++i] );
+			else
+				Validator.findPuzzles( new File(args[i]), found );
+		}
+		if ( found.size() == 0 )	Validator.findPuzzles( new File("."), found );
+
+		for ( int i=0; i<found.size(); i++ ) {
+			File file = (File)found.elementAt( i );
+			Grid grid;
+			try {
+				URL base = file.getParentFile().toURI().toURL();
+				grid = new Grid( new Picture().create(base, file.getName()), false );
+			}
+			catch ( Exception e ) {
+				System.out.println( file + ": " + e );
+				continue;
+			}
+
+			Portfolio portfolio = new Portfolio( new Keyarray(grid, true),
+												 new Keyarray(grid, false) );
+			int result = portfolio.solve( millis );
+			String status = ( result == Solver.SOLVED ) ? "solved"
+				: ( result == Solver.CONTRADICTION ) ? "contradiction"
+				: portfolio.allFailed() ? "failed" : "gave up";
+			System.out.println( file + "\t" + status + "\t" +
+								portfolio.getWinnerName() + "\t" +
+								portfolio.getMicros() + "us" );
+			for ( int k=0; k<NAMES.length; k++ ) {
+				if ( portfolio.getError(k) != null )
+					System.out.println( "\t" + NAMES[k] + ": " + portfolio.getError(k) );
+			}
+		}
+		System.out.print( report() );
+	}
+}
@@ -0,0 +1,165 @@
+//
+//
+// Prefetcher
+//
+// Loads puzzles in the background, so that they're ready by the time
+// they're wanted.  While one puzzle is being played, the applet asks for
+// the next one in the chain; a low priority thread reads it and builds
+// its grid and keys.  When the next page starts up it takes the puzzle
+// from here instead of loading it itself.
+//
+// Puzzles are kept in a static table, since each page gets a new applet
+// but they all share the same classes.  They're keyed by the URLs of the
+// puzzle and pack themselves, not of the page asking, since it's the next
+// page that takes what this one prefetched.  Only the last few are kept,
+// and each one is only handed out once.
+//
+// usage: java Prefetcher directory puzzle
+//	checks that a puzzle prefetched from one page in the directory is
+//	handed to another
+//
+import java.awt.Color;
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+
+class Prefetcher
+{
+	// the most puzzles to keep waiting to be played
+	static final int	MAX_WAITING = 4;
+
+	//=========================================
+	// Internal class for a puzzle, ready to play
+	//=========================================
+	static class Puzzle
+	{
+		Grid		m_grid;
+		Keyarray	m_rowKeys;
+		Keyarray	m_colKeys;
+
+		// constructor
+		public Puzzle( Grid grid, Keyarray rowKeys, Keyarray colKeys ) {
+			m_grid = grid;
+			m_rowKeys = rowKeys;
+			m_colKeys = colKeys;
+		}
+
+		public Grid		grid()		{ return m_grid; }
+		public Keyarray	rowKeys()	{ return m_rowKeys; }
+		public Keyarray	colKeys()	{ return m_colKeys; }
+	}
+
+	// puzzles being loaded, or waiting to be played, oldest first
+	static LinkedHashMap	s_waiting = new LinkedHashMap();
+
+	// one thread does all of the loading, keeping out of the player's way
+	static ExecutorService	s_loader = Executors.newSingleThreadExecutor(
+		new ThreadFactory() {
+			public Thread newThread( Runnable r ) {
+				Thread thread = new Thread( r, "Prefetcher" );
+				thread.setDaemon( true );
+				thread.setPriority( Thread.MIN_PRIORITY );
+				return thread;
+			}
+		});
+
+	// Start loading a puzzle in the background, if it isn't already.
+	// The pack is the name of a compiled puzzle pack, or "" for none.
+	public static synchronized void prefetch( final URL base,
+			final String filename, final String pack, final boolean solved ) {
+
+		String key;
+		try {
+			key = key( base, filename, pack, solved );
+		}
+		catch ( MalformedURLException e ) { return; }	// take() will say
+		if ( s_waiting.containsKey(key) )	return;
+
+		FutureTask task = new FutureTask( new Callable() {
+			public Object call() throws Exception {
+				return load( base, filename, pack, solved );
+			}
+		});
+		s_waiting.put( key, task );
+		s_loader.execute( task );
+
+		// Forget about the oldest ones if there are too many.
+		Iterator it = s_waiting.values().iterator();
+		while ( s_waiting.size() > MAX_WAITING ) {
+			((Future)it.next()).cancel( false );
+			it.remove();
+		}
+	}
+
+	// Get a puzzle, from the background if it was prefetched (waiting for
+	// it if it's still being loaded), or else by loading it now.
+	public static Puzzle take( URL base, String filename, String pack,
+							   boolean solved ) throws Exception {
+		Future task;
+		synchronized ( Prefetcher.class ) {
+			task = (Future)s_waiting.remove( key(base, filename, pack, solved) );
+		}
+
+		if ( task != null && !task.isCancelled() ) {
+			try {
+				return (Puzzle)task.get();
+			}
+			catch ( ExecutionException e ) {
+				// it didn't work in the background; try again below, so that
+				// any error comes from here
+			}
+			catch ( CancellationException e ) {}
+		}
+		return load( base, filename, pack, solved );
+	}
+
+	// Read a puzzle and build its grid and keys.
+	public static Puzzle load( URL base, String filename, String pack,
+							   boolean solved ) throws Exception {
+		Grid grid;
+		Keyarray rowKeys, colKeys;
+		if ( pack.length() > 0 ) {
+			// everything comes ready-made from the pack
+			PuzzlePack puzzles = PuzzlePack.open( new URL(base, pack) );
+			grid	= puzzles.makeGrid( filename, solved );
+			rowKeys	= puzzles.makeKeys( filename, grid, true );
+			colKeys	= puzzles.makeKeys( filename, grid, false );
+		}
+		else {
+			Color colors[][] = new Picture().create( base, filename );
+			grid	= new Grid( colors, solved );
+			rowKeys	= new Keyarray( grid, true );
+			colKeys	= new Keyarray( grid, false );
+		}
+		return new Puzzle( grid, rowKeys, colKeys );
+	}
+
+	// Private methods
+
+	private static String key( URL base, String filename, String pack,
+							   boolean solved ) throws MalformedURLException {
+		String packURL = ( pack.length() > 0 ) ? new URL(base, pack).toString() : "";
+		return new URL(base, filename) + " " + packURL + " " + solved;
+	}
+
+	public static void main( String args[] ) throws Exception {
+		URL dir = new File( args[0] ).toURI().toURL();
+		URL page1 = new URL( dir, "page-1.html" );
+		URL page2 = new URL( dir, "page-2.html" );
+
+		prefetch( page1, args[1], "", false );
+		Future task;
+		synchronized ( Prefetcher.class ) {
+			task = (Future)s_waiting.values().iterator().next();
+		}
+		Puzzle puzzle = take( page2, args[1], "", false );
+
+		boolean handedOver = task.isDone() && task.get() == puzzle;
+		System.out.println( (handedOver ? "ok" : "FAILED") + ": " + args[1] +
+							" prefetched from " + page1 + ", taken from " +
+							page2 + ", " + s_waiting.size() + " left waiting" );
+		if ( !handedOver || s_waiting.size() != 0 )	System.exit( 1 );
+	}
+}
@@ -0,0 +1,310 @@
+//
+//
+// PuzzlePack
+//
+// A whole directory of puzzles compiled into one file, so that a puzzle
+// can be loaded without parsing any text or working out its clues.
+//
+// The file is laid out as:
+//
+//	header:	int magic, short version, int number of puzzles
+//	index:	for each puzzle, short name length, the name in UTF-8,
+//			and int offset of its record
+//	record:	short rows, short cols, short colors, byte bits per square,
+//			byte unused, int offsets of the row and column clues (from the
+//			start of the record),
+//			int ARGB for each palette color (lightGray and white first),
+//			one bitplane per bit of the palette index, row by row,
+//			then the row clues and the column clues, each as a short count
+//			followed by a short length and a byte palette index per run.
+//
+// Everything is big-endian.  Local packs are memory mapped.
+//
+// usage: java PuzzlePack directory pack-file	(to compile)
+//		  java PuzzlePack pack-file				(to list and time loading)
+//
+import java.awt.Color;
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+class PuzzlePack
+{
+	static final int	MAGIC	= 0x50424e50;	// "PBNP"
+	static final int	VERSION	= 1;
+
+	// packs that have already been opened, by URL
+	static Hashtable	s_open = new Hashtable();
+
+	// private variables
+	ByteBuffer	m_buf;
+	String		m_names[];
+	Hashtable	m_offsets = new Hashtable();	// name -> Integer
+
+	// constructor
+	public PuzzlePack( ByteBuffer buf ) throws IOException {
+		m_buf = buf;
+		if ( buf.getInt(0) != MAGIC || buf.getShort(4) != VERSION )
+			throw new IOException( "not a puzzle pack" );
+
+		int count = buf.getInt( 6 );
+		m_names = new String[count];
+		int p = 10;
+		for ( int i=0; i<count; i++ ) {
+			int length = buf.getShort( p ) & 0xffff;
+			byte name[] = new byte[length];
+			for ( int j=0; j<length; j++ )	name[j] = buf.get( p+2+j );
+			m_names[i] = new String( name, "UTF-8" );
+			m_offsets.put( m_names[i], Integer.valueOf( buf.getInt(p+2+length) ) );
+			p += 2 + length + 4;
+		}
+	}
+
+	// Open a pack, mapping it if it's a local file.  Packs stay open, so
+	// that moving from puzzle to puzzle doesn't read the file again.
+	public static synchronized PuzzlePack open( URL url ) throws IOException {
+		PuzzlePack pack = (PuzzlePack)s_open.get( url.toString() );
+		if ( pack != null )	return pack;
+
+		ByteBuffer buf = null;
+		if ( url.getProtocol().equals("file") ) {
+			try {
+				RandomAccessFile raf = new RandomAccessFile(
+					new File(url.toURI()), "r" );
+				try {
+					FileChannel channel = raf.getChannel();
+					buf = channel.map( FileChannel.MapMode.READ_ONLY, 0,
+									   channel.size() );
+				}
+				finally {
+					raf.close();
+				}
+			}
+			catch ( URISyntaxException e ) {}	// read it the usual way
+		}
+		if ( buf == null ) {
+			InputStream is = url.openStream();
+			try {
+				buf = ByteBuffer.wrap( Picture.readAll(is) );
+			}
+			finally {
+				is.close();
+			}
+		}
+
+		pack = new PuzzlePack( buf );
+		s_open.put( url.toString(), pack );
+		return pack;
+	}
+
+	// methods
+	public String[] getNames()	{ return m_names; }
+	public boolean contains( String name ) { return m_offsets.containsKey(name); }
+
+	// Build the grid for one puzzle.
+	public Grid makeGrid( String name, boolean presolved ) throws IOException {
+		int p = offset( name );
+		int numRows = m_buf.getShort( p );
+		int numCols = m_buf.getShort( p+2 );
+		int numColors = m_buf.getShort( p+4 );
+		int bits = m_buf.get( p+6 );
+		p += 16;
+
+		Color palette[] = new Color[numColors];
+		palette[Grid.UNSET] = Color.lightGray;
+		for ( int k=Grid.UNSET+1; k<numColors; k++ )
+			palette[k] = XpmDecoder.canonical( new Color(m_buf.getInt(p + 4*k), true) );
+		p += 4*numColors;
+
+		int numSquares = numRows * numCols;
+		int planeBytes = (numSquares + 7) >>> 3;
+		byte hidden[] = new byte[numSquares];
+		for ( int b=0; b<bits; b++, p+=planeBytes ) {
+			for ( int i=0; i<planeBytes; i++ ) {
+				int x = m_buf.get( p+i ) & 0xff;
+				for ( int j=0; x != 0; j++, x>>>=1 ) {
+					if ( (x & 1) != 0 )	hidden[(i<<3) + j] |= (byte)(1 << b);
+				}
+			}
+		}
+
+		return new Grid( numRows, numCols, palette, numColors, hidden,
+						 presolved );
+	}
+
+	// Build the row or column clues for one puzzle, on a grid from makeGrid.
+	public Keyarray makeKeys( String name, Grid grid, boolean forRow )
+		throws IOException {
+
+		int p = offset( name );
+		p += m_buf.getInt( (forRow) ? p+8 : p+12 );
+		int numKeys = (forRow) ? grid.getNumRows() : grid.getNumCols();
+
+		int numbers[][] = new int[numKeys][];
+		Color colors[][] = new Color[numKeys][];
+		for ( int i=0; i<numKeys; i++ ) {
+			int size = m_buf.getShort( p );
+			p += 2;
+			numbers[i] = new int[size];
+			colors[i] = new Color[size];
+			for ( int j=0; j<size; j++, p+=3 ) {
+				numbers[i][j] = m_buf.getShort( p );
+				colors[i][j] = grid.getPaletteColor( m_buf.get(p+2) & 0xff );
+			}
+		}
+		return new Keyarray( grid, forRow, numbers, colors );
+	}
+
+	// Private methods
+
+	private int offset( String name ) throws IOException {
+		Integer offset = (Integer)m_offsets.get( name );
+		if ( offset == null )	throw new FileNotFoundException( name );
+		return offset.intValue();
+	}
+
+	// Compile all of the puzzles at or below a directory into a pack.
+	static void compile( File dir, File out ) throws IOException {
+		Vector files = new Vector();
+		Validator.findPuzzles( dir, files );
+		String prefix = dir.getPath() + File.separator;
+
+		Vector names = new Vector();
+		Vector records = new Vector();
+		for ( int i=0; i<files.size(); i++ ) {
+			File file = (File)files.elementAt(i);
+			String name = file.getPath().substring( prefix.length() )
+				.replace( File.separatorChar, '/' );
+			try {
+				records.addElement( makeRecord(file) );
+				names.addElement( name );
+			}
+			catch ( Exception e ) {
+				System.out.println( "skipping " + name + ": " + e );
+			}
+		}
+
+		// Work out where each record will go.
+		int indexSize = 0;
+		for ( int i=0; i<names.size(); i++ )
+			indexSize += 2 + ((String)names.elementAt(i)).getBytes("UTF-8").length + 4;
+		int offset = 10 + indexSize;
+
+		DataOutputStream dos = new DataOutputStream( new BufferedOutputStream(
+			new FileOutputStream(out) ) );
+		try {
+			dos.writeInt( MAGIC );
+			dos.writeShort( VERSION );
+			dos.writeInt( names.size() );
+			for ( int i=0; i<names.size(); i++ ) {
+				byte name[] = ((String)names.elementAt(i)).getBytes( "UTF-8" );
+				dos.writeShort( name.length );
+				dos.write( name );
+				dos.writeInt( offset );
+				offset += ((byte[])records.elementAt(i)).length;
+			}
+			for ( int i=0; i<records.size(); i++ )
+				dos.write( (byte[])records.elementAt(i) );
+		}
+		finally {
+			dos.close();
+		}
+		System.out.println( "packed " + names.size() + " puzzles into " + out );
+	}
+
+	// Lay out the record for a single puzzle.
+	private static byte[] makeRecord( File file ) throws Exception {
+		Color colors[][] = new Picture().create(
+			file.getParentFile().toURI().toURL(), file.getName() );
+		Grid grid = new Grid( colors, false );
+		Keyarray rowKeys = new Keyarray( grid, true );
+		Keyarray colKeys = new Keyarray( grid, false );
+
+		int numRows = grid.getNumRows();
+		int numCols = grid.getNumCols();
+		int numColors = grid.getNumColors();
+		int bits = Math.max( 1, 32 - Integer.numberOfLeadingZeros(numColors-1) );
+		int numSquares = numRows * numCols;
+		int planeBytes = (numSquares + 7) >>> 3;
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream( bytes );
+		int rowClues = 16 + 4*numColors + bits*planeBytes;
+		int colClues = rowClues + clueSize( rowKeys );
+		dos.writeShort( numRows );
+		dos.writeShort( numCols );
+		dos.writeShort( numColors );
+		dos.writeByte( bits );
+		dos.writeByte( 0 );
+		dos.writeInt( rowClues );
+		dos.writeInt( colClues );
+
+		for ( int k=0; k<numColors; k++ ) {
+			Color color = grid.getPaletteColor( k );
+			if ( color == null )	throw new IOException( "unknown color" );
+			dos.writeInt( color.getRGB() );
+		}
+
+		byte hidden[] = grid.getHiddenPlane();
+		for ( int b=0; b<bits; b++ ) {
+			byte plane[] = new byte[planeBytes];
+			for ( int i=0; i<numSquares; i++ ) {
+				if ( (hidden[i] & (1 << b)) != 0 )	plane[i>>>3] |= (byte)(1 << (i&7));
+			}
+			dos.write( plane );
+		}
+
+		writeClues( dos, grid, rowKeys );
+		writeClues( dos, grid, colKeys );
+		dos.flush();
+		return bytes.toByteArray();
+	}
+
+	private static int clueSize( Keyarray keys ) {
+		int size = 0;
+		for ( int i=0; i<keys.getNumKeys(); i++ )	size += 2 + 3*keys.getSize(i);
+		return size;
+	}
+
+	private static void writeClues( DataOutputStream dos, Grid grid,
+									Keyarray keys ) throws IOException {
+		for ( int i=0; i<keys.getNumKeys(); i++ ) {
+			dos.writeShort( keys.getSize(i) );
+			for ( int j=0; j<keys.getSize(i); j++ ) {
+				dos.writeShort( keys.getNumber(i,j) );
+				dos.writeByte( grid.paletteIndex( keys.getFgColor(i,j) ) );
+			}
+		}
+	}
+
+	public static void main( String args[] ) throws IOException {
+		if ( args.length == 2 ) {
+			compile( new File(args[0]), new File(args[1]) );
+			return;
+		}
+		if ( args.length != 1 ) {
+			System.out.println( "usage: java PuzzlePack directory pack-file" );
+			System.out.println( "       java PuzzlePack pack-file" );
+			return;
+		}
+
+		PuzzlePack pack = open( new File(args[0]).toURI().toURL() );
+		String names[] = pack.getNames();
+		for ( int pass=0; pass<2; pass++ ) {	// the first pass warms up
+			long start = System.nanoTime();
+			for ( int i=0; i<names.length; i++ ) {
+				Grid grid = pack.makeGrid( names[i], false );
+				pack.makeKeys( names[i], grid, true );
+				pack.makeKeys( names[i], grid, false );
+			}
+			long nanos = System.nanoTime() - start;
+			if ( pass == 1 )
+				System.out.println( names.length + " puzzles, " +
+									nanos / 1000 / Math.max(1, names.length) +
+									"us each" );
+		}
+	}
+}
@@ -0,0 +1,215 @@
+//
+//
+// Rater
+//
+// Rates how hard every puzzle under the given directories is to solve
+// from its clues.  Each one is first solved by line logic alone, counting
+// the passes it takes; if that gets stuck it is probed, and if that gets
+// stuck too it is searched, noting how deep the guessing has to go.  The
+// difficulty is
+//
+//		passes + 10 * probe rounds + 50 * search depth + guesses
+//
+// so anything that needs probing rates above anything that doesn't, and
+// anything that needs guessing above that.
+//
+// Files are rated in parallel on a fork-join pool, and each line of the
+// report is written as soon as its file is done, so that a long run can be
+// watched (or cut short) as it goes.  The report is CSV, or JSON lines
+// with -json.
+//
+// usage: java Rater [-json] [-nodes n] [directory or file]...
+//
+import java.awt.Color;
+import java.io.File;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+class Rater
+{
+	// what it took to solve a puzzle
+	static final String LINES		= "lines";
+	static final String PROBING		= "probing";
+	static final String SEARCH		= "search";
+	static final String UNSOLVED	= "unsolved";
+	static final String FAILED		= "failed";
+
+	// the most guesses to make before giving up on a puzzle
+	static final long	MAX_NODES = 100000;
+
+	static final String	HEADER =
+		"file,rows,cols,colors,passes,needs,probe_rounds,eliminations," +
+		"nodes,depth,difficulty,micros";
+
+	//=========================================
+	// Internal class for the rating of one file
+	//=========================================
+	static class Rating
+	{
+		String	m_file;
+		String	m_needs = FAILED;
+		int		m_rows, m_cols, m_colors;
+		int		m_passes;
+		int		m_probeRounds;
+		int		m_eliminations;
+		long	m_nodes;
+		int		m_depth;
+		long	m_micros;
+
+		public Rating( String file ) { m_file = file; }
+
+		public long getDifficulty() {
+			return m_passes + 10L*m_probeRounds + 50L*m_depth + m_nodes;
+		}
+
+		public String toCsv() {
+			String file = m_file;
+			if ( file.indexOf(',') >= 0 || file.indexOf('"') >= 0 )
+				file = "\"" + file.replace( "\"", "\"\"" ) + "\"";
+			return file + "," + m_rows + "," + m_cols + "," + m_colors + "," +
+				m_passes + "," + m_needs + "," + m_probeRounds + "," +
+				m_eliminations + "," + m_nodes + "," + m_depth + "," +
+				getDifficulty() + "," + m_micros;
+		}
+
+		public String toJson() {
+			String file = m_file.replace( "\\", "\\\\" ).replace( "\"", "\\\"" );
+			return "{\"file\":\"" + file + "\",\"rows\":" + m_rows +
+				",\"cols\":" + m_cols + ",\"colors\":" + m_colors +
+				",\"passes\":" + m_passes + ",\"needs\":\"" + m_needs +
+				"\",\"probe_rounds\":" + m_probeRounds +
+				",\"eliminations\":" + m_eliminations +
+				",\"nodes\":" + m_nodes + ",\"depth\":" + m_depth +
+				",\"difficulty\":" + getDifficulty() +
+				",\"micros\":" + m_micros + "}";
+		}
+	}
+
+	//===============================================
+	// Internal class for rating a range of files
+	//===============================================
+	static class RateTask extends RecursiveAction
+	{
+		File	m_files[];
+		int		m_from, m_to;
+
+		public RateTask( File files[], int from, int to ) {
+			m_files = files;
+			m_from = from;
+			m_to = to;
+		}
+
+		protected void compute() {
+			if ( m_to - m_from <= Validator.BATCH ) {
+				for ( int i=m_from; i<m_to; i++ )
+					report( rate( m_files[i] ) );
+				return;
+			}
+			int mid = (m_from + m_to) >>> 1;
+			invokeAll( new RateTask( m_files, m_from, mid ),
+					   new RateTask( m_files, mid, m_to ) );
+		}
+	}
+
+	// options from the command line
+	static boolean	s_json;
+	static long		s_maxNodes = MAX_NODES;
+
+	// totals, for the summary at the end
+	static Hashtable	s_counts = new Hashtable();
+
+	// Rate a single puzzle file.
+	static Rating rate( File file ) {
+		Rating rating = new Rating( file.getPath() );
+		long start = System.nanoTime();
+		try {
+			rate( file, rating );
+		}
+		catch ( Exception e ) {
+			rating.m_needs = FAILED;
+		}
+		finally {
+			rating.m_micros = (System.nanoTime() - start) / 1000;
+		}
+		return rating;
+	}
+
+	private static void rate( File file, Rating rating ) throws Exception {
+		URL base = file.getParentFile().toURI().toURL();
+		Color colors[][] = new Picture().create( base, file.getName() );
+		Grid grid = new Grid( colors, false );
+		Keyarray rowKeys = new Keyarray( grid, true );
+		Keyarray colKeys = new Keyarray( grid, false );
+		rating.m_rows = grid.getNumRows();
+		rating.m_cols = grid.getNumCols();
+		rating.m_colors = grid.getNumColors() - 1;
+
+		// Line logic first...
+		Solver solver = new Solver( rowKeys, colKeys );
+		int result = solver.solve();
+		rating.m_passes = solver.getPasses();
+		if ( result == Solver.SOLVED ) {
+			rating.m_needs = LINES;
+			return;
+		}
+
+		// ...then probing...
+		if ( result == Solver.STUCK ) {
+			result = solver.probe();
+			rating.m_probeRounds = solver.getProbeRounds();
+			rating.m_eliminations = solver.getEliminations();
+			if ( result == Solver.SOLVED ) {
+				rating.m_needs = PROBING;
+				return;
+			}
+		}
+
+		// ...and guessing if that's not enough.
+		if ( result == Solver.STUCK ) {
+			result = solver.search( s_maxNodes );
+			rating.m_nodes = solver.getNodes();
+			rating.m_depth = solver.getMaxDepth();
+		}
+		rating.m_needs = ( result == Solver.SOLVED ) ? SEARCH : UNSOLVED;
+	}
+
+	// Write one line of the report, as soon as it's ready.
+	static void report( Rating rating ) {
+		synchronized ( System.out ) {
+			System.out.println( s_json ? rating.toJson() : rating.toCsv() );
+			System.out.flush();
+
+			Integer n = (Integer)s_counts.get( rating.m_needs );
+			s_counts.put( rating.m_needs,
+						  Integer.valueOf( (n == null) ? 1 : n.intValue()+1 ) );
+		}
+	}
+
+	public static void main( String args[] ) {
+		Vector found = new Vector();
+		for ( int i=0; i<args.length; i++ ) {
+			if ( args[i].equals("-json") )
+				s_json = true;
+			else if ( args[i].equals("-nodes") && i+1 < args.length )
+				s_maxNodes = Long.parseLong( args[++i] );
+			else
+				Validator.findPuzzles( new File(args[i]), found );
+		}
+		if ( found.size() == 0 )	Validator.findPuzzles( new File("."), found );
+		File files[] = new File[found.size()];
+		found.copyInto( files );
+
+		if ( !s_json )	System.out.println( HEADER );
+		long start = System.nanoTime();
+		ForkJoinPool pool =
+			new ForkJoinPool( Runtime.getRuntime().availableProcessors() );
+		pool.invoke( new RateTask( files, 0, files.length ) );
+		long millis = (System.nanoTime() - start) / 1000000;
+
+		// The summary goes to stderr, so that it stays out of the report.
+		System.err.println( files.length + " files in " + millis + "ms on " +
+							pool.getParallelism() + " threads: " + s_counts );
+	}
+}
@@ -0,0 +1,211 @@
+//
+//
+// SavedBoard
+//
+// Saves the squares the player has drawn so far, so that leaving the
+// page doesn't lose them.  The visible palette indexes are packed into as
+// few bits per square as the palette needs (two for a black and white
+// puzzle, counting the gray of squares not yet guessed) and deflated,
+// along with a checksum of the puzzle itself, so that a save is never put
+// back onto a puzzle that has since changed.
+//
+// The layout is: int magic, byte version, int checksum, short rows,
+// short cols, byte bits per square, then the squares, row by row, packed
+// from the low bit of each byte up and deflated.
+//
+// Saves go into the user's Preferences, keyed by the puzzle's file name.
+//
+import java.nio.ByteBuffer;
+import java.util.prefs.*;
+import java.util.zip.*;
+
+class SavedBoard
+{
+	static final int	MAGIC	= 0x50424e53;	// "PBNS"
+	static final int	VERSION	= 1;
+	static final int	HEADER	= 14;
+
+	// Preferences can't hold long values, so big saves are split up.
+	static final int	CHUNK	= 6 * 1024;
+	static final String	NODE	= "PaintByNumbers";
+
+	// A checksum of everything that makes up a puzzle.
+	public static int checksum( Grid grid ) {
+		CRC32 crc = new CRC32();
+		ByteBuffer header = ByteBuffer.allocate( 8 + 4*grid.getNumColors() );
+		header.putShort( (short)grid.getNumRows() );
+		header.putShort( (short)grid.getNumCols() );
+		header.putInt( grid.getNumColors() );
+		for ( int k=0; k<grid.getNumColors(); k++ )
+			header.putInt( grid.getPaletteColor(k).getRGB() );
+		crc.update( header.array() );
+		crc.update( grid.getHiddenPlane() );
+		return (int)crc.getValue();
+	}
+
+	// Pack the visible squares of a grid.
+	public static byte[] pack( Grid grid ) {
+		int bits = bitsPerSquare( grid );
+		byte visible[] = grid.getVisiblePlane();
+		byte squares[] = new byte[ (visible.length*bits + 7) / 8 ];
+
+		// Squares never straddle more than two bytes, since bits <= 8.
+		for ( int i=0, bit=0; i<visible.length; i++, bit+=bits ) {
+			int v = (visible[i] & 0xff) << (bit & 7);
+			squares[bit >>> 3] |= (byte)v;
+			if ( (v >>> 8) != 0 )	squares[(bit >>> 3) + 1] |= (byte)(v >>> 8);
+		}
+
+		// Most of a board is long runs of the same thing, so this shrinks
+		// a lot.
+		Deflater deflater = new Deflater( Deflater.BEST_SPEED );
+		deflater.setInput( squares );
+		deflater.finish();
+		byte data[] = new byte[ HEADER + squares.length/4 + 64 ];
+		int length = HEADER;
+		while ( !deflater.finished() ) {
+			if ( length == data.length ) {
+				byte bigger[] = new byte[data.length * 2];
+				System.arraycopy( data, 0, bigger, 0, length );
+				data = bigger;
+			}
+			length += deflater.deflate( data, length, data.length - length );
+		}
+		deflater.end();
+
+		ByteBuffer buf = ByteBuffer.wrap( data );
+		buf.putInt( MAGIC );
+		buf.put( (byte)VERSION );
+		buf.putInt( checksum(grid) );
+		buf.putShort( (short)grid.getNumRows() );
+		buf.putShort( (short)grid.getNumCols() );
+		buf.put( (byte)bits );
+
+		byte packed[] = new byte[length];
+		System.arraycopy( data, 0, packed, 0, length );
+		return packed;
+	}
+
+	// Put packed squares back onto a grid, noting which rows and columns
+	// change.  Returns false, and leaves the grid alone, if the save isn't
+	// for this puzzle.
+	public static boolean unpack( Grid grid, byte data[],
+								  boolean rowChanged[], boolean colChanged[] ) {
+		int bits = bitsPerSquare( grid );
+		int numRows = grid.getNumRows();
+		int numCols = grid.getNumCols();
+		if ( data.length < HEADER )	return false;
+
+		ByteBuffer buf = ByteBuffer.wrap( data );
+		if ( buf.getInt() != MAGIC || buf.get() != VERSION ||
+			 buf.getInt() != checksum(grid) || buf.getShort() != numRows ||
+			 buf.getShort() != numCols || buf.get() != bits )
+			return false;
+
+		byte squares[] = new byte[ (numRows*numCols*bits + 7) / 8 ];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput( data, HEADER, data.length - HEADER );
+			int length = 0;
+			while ( length < squares.length ) {
+				int n = inflater.inflate( squares, length, squares.length - length );
+				if ( n == 0 && (inflater.finished() || inflater.needsInput() ||
+								inflater.needsDictionary()) )
+					return false;
+				length += n;
+			}
+		}
+		catch ( DataFormatException e ) { return false; }
+		finally {
+			inflater.end();
+		}
+
+		int mask = (1 << bits) - 1;
+		int numColors = grid.getNumColors();
+		for ( int r=0, bit=0; r<numRows; r++ ) {
+			for ( int c=0; c<numCols; c++, bit+=bits ) {
+				int p = bit >>> 3;
+				int v = squares[p] & 0xff;
+				if ( p+1 < squares.length )	v |= (squares[p+1] & 0xff) << 8;
+				int k = (v >>> (bit & 7)) & mask;
+				if ( k >= numColors )	k = Grid.UNSET;
+
+				if ( k != grid.getVisibleIndex(r,c) ) {
+					grid.setVisibleIndex( r, c, k );
+					rowChanged[r] = true;
+					colChanged[c] = true;
+				}
+			}
+		}
+		return true;
+	}
+
+	// Save a grid under a name.  Returns false if we aren't allowed to.
+	public static boolean save( String name, Grid grid ) {
+		try {
+			byte data[] = pack( grid );
+			Preferences prefs = Preferences.userRoot().node( NODE );
+			int numChunks = (data.length + CHUNK - 1) / CHUNK;
+			for ( int i=0; i<numChunks; i++ ) {
+				int length = Math.min( CHUNK, data.length - i*CHUNK );
+				byte chunk[] = new byte[length];
+				System.arraycopy( data, i*CHUNK, chunk, 0, length );
+				prefs.putByteArray( key(name, i), chunk );
+			}
+			prefs.putInt( key(name, -1), numChunks );
+			prefs.flush();
+			return true;
+		}
+		catch ( SecurityException e ) { return false; }
+		catch ( BackingStoreException e ) { return false; }
+	}
+
+	// Put back whatever was saved under a name, and recolor the keys for
+	// the rows and columns that changed.  Returns false if there was
+	// nothing (usable) saved.
+	public static boolean restore( String name, Grid grid,
+								   Keyarray rowKeys, Keyarray colKeys ) {
+		byte data[];
+		try {
+			Preferences prefs = Preferences.userRoot().node( NODE );
+			int numChunks = prefs.getInt( key(name, -1), 0 );
+			if ( numChunks == 0 )	return false;
+
+			byte chunks[][] = new byte[numChunks][];
+			int length = 0;
+			for ( int i=0; i<numChunks; i++ ) {
+				chunks[i] = prefs.getByteArray( key(name, i), null );
+				if ( chunks[i] == null )	return false;
+				length += chunks[i].length;
+			}
+			data = new byte[length];
+			for ( int i=0, p=0; i<numChunks; p+=chunks[i].length, i++ )
+				System.arraycopy( chunks[i], 0, data, p, chunks[i].length );
+		}
+		catch ( SecurityException e ) { return false; }
+
+		boolean rowChanged[] = new boolean[grid.getNumRows()];
+		boolean colChanged[] = new boolean[grid.getNumCols()];
+		if ( !unpack( grid, data, rowChanged, colChanged ) )	return false;
+
+		for ( int r=0; r<rowChanged.length; r++ ) {
+			if ( rowChanged[r] )	rowKeys.setColors( r );
+		}
+		for ( int c=0; c<colChanged.length; c++ ) {
+			if ( colChanged[c] )	colKeys.setColors( c );
+		}
+		return true;
+	}
+
+	// Private methods
+
+	private static int bitsPerSquare( Grid grid ) {
+		return Math.max( 1, 32 - Integer.numberOfLeadingZeros(grid.getNumColors()-1) );
+	}
+
+	// Preferences keys are limited in length, so long names are hashed.
+	private static String key( String name, int chunk ) {
+		if ( name.length() > 64 )	name = Integer.toHexString( name.hashCode() );
+		return ( chunk < 0 ) ? name : name + "." + chunk;
+	}
+}
@@ -0,0 +1,571 @@
+//
+//
+// Solver
+//
+// A headless solver that works only from the row and column clues, never
+// from the hidden picture.  Each line keeps one bitset per palette color
+// saying which of its squares can still be that color; lines are solved
+// one at a time by the LineSolver, and any square that changes puts the
+// line that crosses it back on the list until nothing more changes.
+//
+// When line logic gets stuck, probe() tries each color of each undecided
+// square in turn and rules out any that lead straight to a contradiction,
+// and search() guesses and backtracks.  Both keep counts of how much work
+// they had to do, as a measure of how hard the puzzle is.
+//
+// search() probes again after every guess, and guesses whichever color
+// probing found settles the most squares.  Any position whose guesses all
+// came to nothing is remembered, by a hash of its candidates, so that
+// reaching it again by another route is an immediate contradiction.
+// searchUnique() keeps going after the first solution, to prove that
+// there isn't a second one.  Both can be given a deadline.
+//
+// Another thread can cancel() a solver part way through, and whatever it
+// was doing gives up as STUCK.  Lines are solved rows first unless
+// setColumnsFirst() says otherwise, which can make a big difference to
+// how long a puzzle takes.
+//
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.*;
+
+class Solver
+{
+	// results from solve()
+	public static final int SOLVED			= 0;
+	public static final int STUCK			= 1;
+	public static final int CONTRADICTION	= 2;
+	public static final int MULTIPLE		= 3;	// from searchUnique()
+
+	// how many dead ends to remember
+	static final int	MAX_NOGOODS = 1 << 16;
+
+	// how long main() gives search to prove a puzzle unique
+	static final long	SEARCH_MILLIS = 10000;
+
+	// private variables
+	int		m_numRows;
+	int		m_numCols;
+	int		m_numColors;
+	Color	m_palette[];		// index 0 is always white
+
+	int		m_rowLens[][];		// the clues, with colors as palette indexes
+	int		m_rowColors[][];
+	int		m_colLens[][];
+	int		m_colColors[][];
+
+	long	m_rows[][][];		// [row][color][word] candidates
+	long	m_cols[][][];		// [col][color][word] candidates
+	boolean	m_rowDirty[];
+	boolean	m_colDirty[];
+
+	LineSolver	m_lineSolver;
+	long	m_before[][];		// scratch copy of a line before solving
+	int		m_passes;
+	boolean	m_colsFirst;
+	volatile boolean	m_cancelled;
+
+	// how much probing and searching it took
+	int		m_probeRounds;		// times round all of the squares
+	int		m_probes;			// colors tried
+	int		m_eliminations;		// colors ruled out by probing
+	long	m_nodes;			// guesses made by search()
+	int		m_maxDepth;			// deepest guess
+	long	m_nogoodHits;		// positions already known to be dead ends
+
+	// the search in progress
+	long	m_maxNodes;
+	long	m_deadline;			// System.nanoTime() to give up at, or 0
+	int		m_wanted;			// solutions to look for
+	int		m_numSolutions;
+	long	m_solution[][][][];	// the first one found
+	int		m_guessRow, m_guessCol, m_guessColor;
+	long	m_probeState[][][][];	// scratch, to undo a probe
+
+	// Dead ends, keyed by a hash of the candidates.  Each (square, color)
+	// has a random number, and a position hashes to the XOR of the numbers
+	// for all of its candidates.
+	long	m_zobrist[];
+	LinkedHashMap	m_nogoods;
+
+	// constructor
+	public Solver( Keyarray rowKeys, Keyarray colKeys ) {
+		m_numRows = rowKeys.getNumKeys();
+		m_numCols = colKeys.getNumKeys();
+
+		// White first, then every other color the clues mention.
+		m_palette = new Color[8];
+		m_palette[0] = Color.white;
+		m_numColors = 1;
+
+		m_rowLens	= new int[m_numRows][];
+		m_rowColors	= new int[m_numRows][];
+		m_colLens	= new int[m_numCols][];
+		m_colColors	= new int[m_numCols][];
+		int maxRuns = 0;
+		for ( int r=0; r<m_numRows; r++ ) {
+			readClue( rowKeys, r, m_rowLens, m_rowColors );
+			maxRuns = Math.max( maxRuns, m_rowLens[r].length );
+		}
+		for ( int c=0; c<m_numCols; c++ ) {
+			readClue( colKeys, c, m_colLens, m_colColors );
+			maxRuns = Math.max( maxRuns, m_colLens[c].length );
+		}
+
+		// Every square starts out able to be any color.
+		m_rows = new long[m_numRows][m_numColors][LineSolver.words(m_numCols)];
+		m_cols = new long[m_numCols][m_numColors][LineSolver.words(m_numRows)];
+		for ( int r=0; r<m_numRows; r++ ) {
+			for ( int k=0; k<m_numColors; k++ )
+				LineSolver.setRange( m_rows[r][k], 0, m_numCols );
+		}
+		for ( int c=0; c<m_numCols; c++ ) {
+			for ( int k=0; k<m_numColors; k++ )
+				LineSolver.setRange( m_cols[c][k], 0, m_numRows );
+		}
+		m_rowDirty = new boolean[m_numRows];
+		m_colDirty = new boolean[m_numCols];
+
+		int maxLen = Math.max( m_numRows, m_numCols );
+		m_lineSolver = new LineSolver( maxLen, maxRuns, m_numColors );
+		m_before = new long[m_numColors][LineSolver.words(maxLen)];
+	}
+
+	// methods
+	public int	getNumRows()		{ return m_numRows; }
+	public int	getNumCols()		{ return m_numCols; }
+	public int	getNumColors()		{ return m_numColors; }
+	public Color getPaletteColor( int k )	{ return m_palette[k]; }
+	public int	getPasses()			{ return m_passes; }
+	public int	getProbeRounds()	{ return m_probeRounds; }
+	public int	getProbes()			{ return m_probes; }
+	public int	getEliminations()	{ return m_eliminations; }
+	public long	getNodes()			{ return m_nodes; }
+	public int	getMaxDepth()		{ return m_maxDepth; }
+	public int	getNumNogoods()		{ return (m_nogoods == null) ? 0 : m_nogoods.size(); }
+	public long	getNogoodHits()		{ return m_nogoodHits; }
+
+	public void	setColumnsFirst( boolean colsFirst )	{ m_colsFirst = colsFirst; }
+
+	// Ask the solver to stop, from another thread.  It notices between
+	// lines, and returns STUCK.
+	public void	cancel()			{ m_cancelled = true; }
+	public boolean isCancelled()	{ return m_cancelled; }
+
+	// Run line logic until nothing more can be deduced.
+	public int solve() {
+		for ( int r=0; r<m_numRows; r++ )	m_rowDirty[r] = true;
+		for ( int c=0; c<m_numCols; c++ )	m_colDirty[c] = true;
+		m_passes = 0;
+
+		if ( !propagate( true ) )	return CONTRADICTION;
+		m_passes--;		// the last pass found nothing to do
+
+		if ( m_cancelled )	return STUCK;
+		return isComplete() ? SOLVED : STUCK;
+	}
+
+	// Line logic, then probing: try each color of each undecided square,
+	// and rule out the ones that make line logic hit a contradiction.
+	// Keeps going round until that stops finding anything.
+	public int probe() {
+		int result = solve();
+		if ( result != STUCK )	return result;
+
+		m_deadline = 0;
+		result = probeSquares();
+		if ( result != SOLVED )	return result;
+		return isComplete() ? SOLVED : STUCK;
+	}
+
+	// Line logic, then guessing and backtracking until a solution turns
+	// up.  Gives up (returning STUCK) after maxNodes guesses.
+	public int search( long maxNodes ) {
+		return search( 1, maxNodes, 0 );
+	}
+
+	// Look for a second solution, to prove there's only one.  Returns
+	// SOLVED if there's exactly one, MULTIPLE if there's more, leaving the
+	// first one found in place either way.  Gives up (returning STUCK)
+	// after the given number of milliseconds.
+	public int searchUnique( long millis ) {
+		return search( 2, Long.MAX_VALUE, millis );
+	}
+
+	// Has every square been narrowed down to a single color?
+	public boolean isComplete() {
+		for ( int r=0; r<m_numRows; r++ ) {
+			for ( int c=0; c<m_numCols; c++ ) {
+				if ( Integer.bitCount( getCandidates(r,c) ) != 1 )	return false;
+			}
+		}
+		return true;
+	}
+
+	// The palette colors this square can still be, as a bitmask.
+	public int getCandidates( int row, int col ) {
+		int mask = 0;
+		for ( int k=0; k<m_numColors; k++ ) {
+			if ( LineSolver.get( m_rows[row][k], col ) )	mask |= 1 << k;
+		}
+		return mask;
+	}
+
+	// The color of a square, or null if it isn't known yet.
+	public Color getColor( int row, int col ) {
+		int mask = getCandidates( row, col );
+		if ( Integer.bitCount(mask) != 1 )	return null;
+		return m_palette[ Integer.numberOfTrailingZeros(mask) ];
+	}
+
+	// Private methods
+
+	// Solve the lines marked dirty, and the ones they affect, until nothing
+	// more changes.  Returns false on a contradiction.  If the solver is
+	// cancelled this stops early, so callers have to check for that before
+	// trusting what's left.
+	private boolean propagate( boolean countPasses ) {
+		boolean more = true;
+		while ( more && !m_cancelled ) {
+			more = false;
+			if ( countPasses )	m_passes++;
+			for ( int half=0; half<2; half++ ) {
+				boolean forRow = ( half == 0 ) != m_colsFirst;
+				boolean dirty[] = ( forRow ) ? m_rowDirty : m_colDirty;
+				for ( int i=0; i<dirty.length; i++ ) {
+					if ( !dirty[i] )	continue;
+					dirty[i] = false;
+					if ( !solveLine( forRow, i ) )	return false;
+					more = true;
+				}
+			}
+		}
+		return true;
+	}
+
+	// Has the deadline passed, or has someone cancelled us?
+	private boolean stopped() {
+		return m_cancelled ||
+			( m_deadline != 0 && System.nanoTime() - m_deadline > 0 );
+	}
+
+	// Line logic, then search for as many solutions as are wanted.
+	private int search( int wanted, long maxNodes, long millis ) {
+		int result = solve();
+		if ( result == CONTRADICTION )	return result;
+
+		m_nodes = 0;
+		m_maxDepth = 0;
+		m_maxNodes = maxNodes;
+		m_deadline = ( millis > 0 ) ? System.nanoTime() + millis*1000000 : 0;
+		m_wanted = wanted;
+		m_numSolutions = 0;
+		m_solution = null;
+		if ( m_nogoods == null ) {
+			m_nogoods = new LinkedHashMap( 256, 0.75f, true ) {
+				protected boolean removeEldestEntry( Map.Entry eldest ) {
+					return size() > MAX_NOGOODS;
+				}
+			};
+			Random random = new Random( 0x5eed );
+			m_zobrist = new long[m_numRows * m_numCols * m_numColors];
+			for ( int i=0; i<m_zobrist.length; i++ )
+				m_zobrist[i] = random.nextLong();
+		}
+
+		result = search( 1 );
+		if ( result == STUCK )	return STUCK;
+		if ( m_numSolutions == 0 )	return CONTRADICTION;
+
+		restoreState( m_solution );
+		return ( m_numSolutions > 1 ) ? MULTIPLE : SOLVED;
+	}
+
+	// One level of guessing.  Returns SOLVED once enough solutions have
+	// been found, CONTRADICTION when there are no more to be found here,
+	// or STUCK if it's time to give up.
+	private int search( int depth ) {
+		m_maxDepth = Math.max( m_maxDepth, depth );
+		if ( stopped() )	return STUCK;
+
+		Long hash = Long.valueOf( hash() );
+		if ( m_nogoods.get(hash) != null ) {	// get(), to count as a use
+			m_nogoodHits++;
+			return CONTRADICTION;
+		}
+
+		// Probing may finish the job, and says which guess to make if not.
+		int result = probeSquares();
+		if ( result == STUCK || stopped() )	return STUCK;
+		if ( result == CONTRADICTION ) {
+			m_nogoods.put( hash, hash );
+			return CONTRADICTION;
+		}
+		if ( isComplete() ) {
+			if ( m_numSolutions++ == 0 )	m_solution = saveState();
+			return ( m_numSolutions >= m_wanted ) ? SOLVED : CONTRADICTION;
+		}
+
+		int row = m_guessRow, col = m_guessCol, first = m_guessColor;
+		int mask = getCandidates( row, col );
+		int solutionsBefore = m_numSolutions;
+		for ( int i=0; i<m_numColors; i++ ) {
+			int k = (first + i) % m_numColors;
+			if ( (mask & (1 << k)) == 0 )	continue;
+			if ( ++m_nodes > m_maxNodes )	return STUCK;
+
+			long state[][][][] = saveState();
+			setSquare( row, col, k );
+			result = ( propagate(false) ) ? search( depth+1 ) : CONTRADICTION;
+			if ( result != CONTRADICTION )	return result;
+			restoreState( state );
+
+			// Nothing more to be found with k here, so the other colors
+			// can be tried without it.
+			clearSquare( row, col, k );
+			if ( !propagate( false ) )	break;
+		}
+
+		if ( m_numSolutions == solutionsBefore )	m_nogoods.put( hash, hash );
+		return CONTRADICTION;
+	}
+
+	// Try each color of each undecided square, and rule out the ones that
+	// make line logic hit a contradiction, going round until that stops
+	// finding anything.  Notes the probe that left the fewest candidates,
+	// as the best guess to make next.  Returns CONTRADICTION, STUCK if the
+	// deadline passes, or SOLVED when there's nothing more to find.
+	private int probeSquares() {
+		if ( m_probeState == null )	m_probeState = saveState();
+
+		boolean more = true;
+		while ( more ) {
+			more = false;
+			m_probeRounds++;
+			int best = Integer.MAX_VALUE;
+			for ( int r=0; r<m_numRows; r++ ) {
+				for ( int c=0; c<m_numCols; c++ ) {
+					int mask = getCandidates( r, c );
+					for ( int k=0; k<m_numColors && Integer.bitCount(mask) > 1; k++ ) {
+						if ( (mask & (1 << k)) == 0 )	continue;
+						if ( stopped() )	return STUCK;
+
+						saveState( m_probeState );
+						setSquare( r, c, k );
+						m_probes++;
+						boolean ok = propagate( false );
+						int left = ( ok ) ? countCandidates() : 0;
+						restoreState( m_probeState );
+						if ( ok ) {
+							if ( left < best ) {
+								best = left;
+								m_guessRow = r;
+								m_guessCol = c;
+								m_guessColor = k;
+							}
+							continue;
+						}
+
+						// k is impossible here
+						clearSquare( r, c, k );
+						m_eliminations++;
+						if ( !propagate( false ) )	return CONTRADICTION;
+						mask = getCandidates( r, c );
+						more = true;
+					}
+				}
+			}
+		}
+		return SOLVED;
+	}
+
+	// How many (square, color) candidates are left.
+	private int countCandidates() {
+		int count = 0;
+		for ( int r=0; r<m_numRows; r++ ) {
+			for ( int k=0; k<m_numColors; k++ ) {
+				long bits[] = m_rows[r][k];
+				for ( int i=0; i<bits.length; i++ )	count += Long.bitCount( bits[i] );
+			}
+		}
+		return count;
+	}
+
+	// A hash of all of the candidates, for remembering dead ends.
+	private long hash() {
+		long hash = 0;
+		for ( int r=0; r<m_numRows; r++ ) {
+			for ( int k=0; k<m_numColors; k++ ) {
+				long bits[] = m_rows[r][k];
+				for ( int i=0; i<bits.length; i++ ) {
+					long w = bits[i];
+					while ( w != 0 ) {
+						int c = (i<<6) + Long.numberOfTrailingZeros( w );
+						w &= w - 1;
+						hash ^= m_zobrist[ (r*m_numCols + c)*m_numColors + k ];
+					}
+				}
+			}
+		}
+		return hash;
+	}
+
+	// Make a square a single color, marking its lines to be solved again.
+	private void setSquare( int row, int col, int k ) {
+		for ( int j=0; j<m_numColors; j++ ) {
+			if ( j != k )	clearSquare( row, col, j );
+		}
+	}
+
+	// Rule out one color for a square.
+	private void clearSquare( int row, int col, int k ) {
+		if ( !LineSolver.get( m_rows[row][k], col ) )	return;
+		LineSolver.clear( m_rows[row][k], col );
+		LineSolver.clear( m_cols[col][k], row );
+		m_rowDirty[row] = true;
+		m_colDirty[col] = true;
+	}
+
+	// Copies of the candidates, to go back to after a guess.
+	private long[][][][] saveState() {
+		long state[][][][] = { new long[m_numRows][][], new long[m_numCols][][] };
+		for ( int r=0; r<m_numRows; r++ )	state[0][r] = copy( m_rows[r] );
+		for ( int c=0; c<m_numCols; c++ )	state[1][c] = copy( m_cols[c] );
+		return state;
+	}
+
+	// The same, into copies made earlier.
+	private void saveState( long state[][][][] ) {
+		for ( int r=0; r<m_numRows; r++ ) {
+			for ( int k=0; k<m_numColors; k++ )
+				System.arraycopy( m_rows[r][k], 0, state[0][r][k], 0, m_rows[r][k].length );
+		}
+		for ( int c=0; c<m_numCols; c++ ) {
+			for ( int k=0; k<m_numColors; k++ )
+				System.arraycopy( m_cols[c][k], 0, state[1][c][k], 0, m_cols[c][k].length );
+		}
+	}
+
+	private void restoreState( long state[][][][] ) {
+		for ( int r=0; r<m_numRows; r++ ) {
+			for ( int k=0; k<m_numColors; k++ )
+				System.arraycopy( state[0][r][k], 0, m_rows[r][k], 0, m_rows[r][k].length );
+			m_rowDirty[r] = false;
+		}
+		for ( int c=0; c<m_numCols; c++ ) {
+			for ( int k=0; k<m_numColors; k++ )
+				System.arraycopy( state[1][c][k], 0, m_cols[c][k], 0, m_cols[c][k].length );
+			m_colDirty[c] = false;
+		}
+	}
+
+	private static long[][] copy( long line[][] ) {
+		long copy[][] = new long[line.length][];
+		for ( int k=0; k<line.length; k++ )	copy[k] = (long[])line[k].clone();
+		return copy;
+	}
+
+	// Copy one clue out of a Keyarray, adding its colors to the palette.
+	private void readClue( Keyarray keys, int i, int lens[][], int colors[][] ) {
+		int size = keys.getSize( i );
+		lens[i] = new int[size];
+		colors[i] = new int[size];
+		for ( int j=0; j<size; j++ ) {
+			lens[i][j] = keys.getNumber( i, j );
+			colors[i][j] = paletteIndex( keys.getFgColor( i, j ) );
+		}
+	}
+
+	// Find a clue color in the palette, adding it if it isn't there yet.
+	// As in Grid, a color that couldn't be decoded (null) is a color too.
+	private int paletteIndex( Color color ) {
+		for ( int k=0; k<m_numColors; k++ ) {
+			if ( m_palette[k] == color )	return k;
+		}
+		for ( int k=0; k<m_numColors; k++ ) {
+			if ( color != null && color.equals(m_palette[k]) )	return k;
+		}
+		if ( m_numColors == m_palette.length ) {
+			Color bigger[] = new Color[m_numColors*2];
+			System.arraycopy( m_palette, 0, bigger, 0, m_numColors );
+			m_palette = bigger;
+		}
+		m_palette[m_numColors] = color;
+		return m_numColors++;
+	}
+
+	// Solve one line, and pass any squares that changed on to the lines
+	// that cross them.  Returns false on a contradiction.
+	private boolean solveLine( boolean forRow, int index ) {
+		long line[][]	= ( forRow ) ? m_rows[index] : m_cols[index];
+		long cross[][][] = ( forRow ) ? m_cols : m_rows;
+		boolean crossDirty[] = ( forRow ) ? m_colDirty : m_rowDirty;
+		int n			= ( forRow ) ? m_numCols : m_numRows;
+		int lens[]		= ( forRow ) ? m_rowLens[index] : m_colLens[index];
+		int colors[]	= ( forRow ) ? m_rowColors[index] : m_colColors[index];
+		int numWords	= LineSolver.words( n );
+
+		for ( int k=0; k<m_numColors; k++ )
+			System.arraycopy( line[k], 0, m_before[k], 0, numWords );
+
+		if ( !m_lineSolver.solve( line, n, lens, colors, lens.length ) )
+			return false;
+
+		for ( int k=0; k<m_numColors; k++ ) {
+			for ( int i=0; i<numWords; i++ ) {
+				long gone = m_before[k][i] & ~line[k][i];
+				while ( gone != 0 ) {
+					int p = (i<<6) + Long.numberOfTrailingZeros( gone );
+					gone &= gone - 1;
+					LineSolver.clear( cross[p][k], index );
+					crossDirty[p] = true;
+				}
+			}
+		}
+		return true;
+	}
+
+	// Solve the puzzles named on the command line, and show how long it took.
+	public static void main( String args[] ) throws IOException {
+		URL base = new File(".").toURI().toURL();
+		for ( int i=0; i<args.length; i++ ) {
+			Grid grid;
+			try {
+				grid = new Grid( new Picture().create(base, args[i]), false );
+			}
+			catch ( Exception e ) {
+				System.out.println( args[i] + ": " + e );
+				continue;
+			}
+			Keyarray rowKeys = new Keyarray( grid, true );
+			Keyarray colKeys = new Keyarray( grid, false );
+
+			long start = System.nanoTime();
+			Solver solver = new Solver( rowKeys, colKeys );
+			int result = solver.solve();
+			long micros = (System.nanoTime() - start) / 1000;
+
+			String status = ( result == SOLVED ) ? "solved"
+				: ( result == STUCK ) ? "stuck" : "contradiction";
+			System.out.println( args[i] + ": " + status + " in " +
+								solver.getPasses() + " passes, " +
+								micros + "us" );
+			if ( result != STUCK )	continue;
+
+			// See whether guessing gets anywhere.
+			start = System.nanoTime();
+			result = solver.searchUnique( SEARCH_MILLIS );
+			micros = (System.nanoTime() - start) / 1000;
+			status = ( result == SOLVED ) ? "unique"
+				: ( result == MULTIPLE ) ? "not unique"
+				: ( result == STUCK ) ? "gave up" : "contradiction";
+			System.out.println( args[i] + ": " + status + " after " +
+								solver.getNodes() + " guesses, depth " +
+								solver.getMaxDepth() + ", " +
+								solver.getNumNogoods() + " dead ends, " +
+								micros + "us" );
+		}
+	}
+}
@@ -0,0 +1,151 @@
+//
+//
+// UndoLog
+//
+// Remembers the last few fills on a grid so that they can be undone and
+// redone.  Each fill is a rectangle of squares set to one color, and is
+// kept as the rectangle, the new color and the colors the squares had
+// before, run-length encoded (a fill mostly covers squares that were all
+// the same, so this is usually just a few runs).
+//
+// The fills are kept in a ring of fixed size, so the oldest ones drop off
+// the end and the memory used stays bounded however long the game goes.
+//
+import java.awt.Rectangle;
+
+class UndoLog
+{
+	//=========================================
+	// Internal class for one fill
+	//=========================================
+	static class Fill
+	{
+		Rectangle	m_rect;		// x is the column, y is the row
+		int			m_newIndex;
+
+		// the old palette indexes, row by row across the rectangle, each run
+		// packed as (length << 8) | index
+		int			m_runs[];
+
+		public Fill( Rectangle rect, int newIndex, int runs[] ) {
+			m_rect = rect;
+			m_newIndex = newIndex;
+			m_runs = runs;
+		}
+	}
+
+	// private variables
+	Grid	m_grid;
+	Fill	m_fills[];
+	int		m_first;		// the oldest fill in the ring
+	int		m_numUndos;		// how many fills can be undone
+	int		m_numRedos;		// how many undone fills can be redone
+
+	int		m_scratch[];	// runs for the fill being recorded
+
+	// constructor
+	public UndoLog( Grid grid, int capacity ) {
+		m_grid = grid;
+		m_fills = new Fill[capacity];
+		m_scratch = new int[16];
+	}
+
+	// methods
+	public boolean canUndo()	{ return m_numUndos > 0; }
+	public boolean canRedo()	{ return m_numRedos > 0; }
+
+	// Note a fill that is about to be made, before the grid is changed.
+	// Returns false (and remembers nothing) if it wouldn't change anything.
+	public boolean record( Rectangle rect, int newIndex ) {
+		int n = 0;
+		int lastIndex = -1;
+		int length = 0;
+		boolean changes = false;
+		for ( int r=rect.y; r<rect.y+rect.height; r++ ) {
+			for ( int c=rect.x; c<rect.x+rect.width; c++ ) {
+				int k = m_grid.getVisibleIndex( r, c );
+				if ( k != newIndex )	changes = true;
+				if ( k == lastIndex && length < 0xffffff ) {
+					length++;
+					continue;
+				}
+				if ( length > 0 )	n = addRun( n, length, lastIndex );
+				lastIndex = k;
+				length = 1;
+			}
+		}
+		if ( !changes )	return false;
+		n = addRun( n, length, lastIndex );
+
+		int runs[] = new int[n];
+		System.arraycopy( m_scratch, 0, runs, 0, n );
+
+		// Anything that was undone can't be redone after a new fill.
+		m_numRedos = 0;
+		if ( m_numUndos == m_fills.length ) {
+			m_first = (m_first + 1) % m_fills.length;
+			m_numUndos--;
+		}
+		m_fills[ (m_first + m_numUndos) % m_fills.length ] =
+			new Fill( new Rectangle(rect), newIndex, runs );
+		m_numUndos++;
+		return true;
+	}
+
+	// Put back the colors from before the last fill.  Returns the squares
+	// that changed, or null if there's nothing to undo.
+	public Rectangle undo() {
+		if ( m_numUndos == 0 )	return null;
+		m_numUndos--;
+		m_numRedos++;
+		Fill fill = m_fills[ (m_first + m_numUndos) % m_fills.length ];
+
+		Rectangle rect = fill.m_rect;
+		int run = 0;
+		int left = fill.m_runs[0] >>> 8;
+		for ( int r=rect.y; r<rect.y+rect.height; r++ ) {
+			for ( int c=rect.x; c<rect.x+rect.width; c++ ) {
+				if ( left == 0 )	left = fill.m_runs[++run] >>> 8;
+				m_grid.setVisibleIndex( r, c, fill.m_runs[run] & 0xff );
+				left--;
+			}
+		}
+		return rect;
+	}
+
+	// Make the last undone fill again.  Returns the squares that changed,
+	// or null if there's nothing to redo.
+	public Rectangle redo() {
+		if ( m_numRedos == 0 )	return null;
+		Fill fill = m_fills[ (m_first + m_numUndos) % m_fills.length ];
+		m_numUndos++;
+		m_numRedos--;
+
+		Rectangle rect = fill.m_rect;
+		for ( int r=rect.y; r<rect.y+rect.height; r++ ) {
+			for ( int c=rect.x; c<rect.x+rect.width; c++ )
+				m_grid.setVisibleIndex( r, c, fill.m_newIndex );
+		}
+		return rect;
+	}
+
+	// Forget everything.
+	public void clear() {
+		m_first = 0;
+		m_numUndos = 0;
+		m_numRedos = 0;
+		java.util.Arrays.fill( m_fills, null );
+	}
+
+	// Private methods
+
+	private int addRun( int n, int length, int index ) {
+		if ( n == m_scratch.length ) {
+			int bigger[] = new int[n*2];
+			System.arraycopy( m_scratch, 0, bigger, 0, n );
+			m_scratch = bigger;
+		}
+		m_scratch[n] = (length << 8) | index;
+		return n + 1;
+	}
+}
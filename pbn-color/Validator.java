@@ -0,0 +1,199 @@
+//
+//
+// Validator
+//
+// Checks every puzzle file under the given directories: that it parses,
+// that all of its colors are known, and whether its clues alone are
+// enough to solve it.  Those that line logic
+// can't finish are searched, for up to ten seconds each, for a second
+// solution, to tell the ones that are just hard from the ones that are
+// ambiguous.  Files are checked in parallel on a fork-join pool.
+//
+// usage: java Validator [-millis n] [directory or file]...
+//
+import java.awt.Color;
+import java.io.File;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+class Validator
+{
+	// the possible outcomes for one file
+	static final String OK			= "ok";
+	static final String UNIQUE		= "unique-needs-search";
+	static final String NOT_UNIQUE	= "not-unique";
+	static final String GAVE_UP		= "gave-up";		// searched too long
+	static final String BAD_PARSE	= "parse-failure";
+	static final String BAD_COLOR	= "unknown-color";
+	static final String BAD_SOLVE	= "contradiction";
+
+	// files to hand to a single task without splitting any further
+	static final int	BATCH = 4;
+
+	// How long to look for a second solution when line logic is stuck.
+	// The slowest puzzle we ship (hard-32x32/sign.xbm) takes 3-6 seconds.
+	static final long	SEARCH_MILLIS = 10000;
+	static long			s_searchMillis = SEARCH_MILLIS;
+
+	//=========================================
+	// Internal class for the result of one file
+	//=========================================
+	static class Result
+	{
+		String	m_file;
+		String	m_status;
+		String	m_detail = "";
+		long	m_micros;
+
+		public Result( String file ) { m_file = file; }
+
+		public String toString() {
+			return m_status + "\t" + m_micros + "us\t" + m_file +
+				( m_detail.length() > 0 ? "\t" + m_detail : "" );
+		}
+	}
+
+	//===============================================
+	// Internal class for checking a range of files
+	//===============================================
+	static class CheckTask extends RecursiveAction
+	{
+		File	m_files[];
+		Result	m_results[];
+		int		m_from, m_to;
+
+		public CheckTask( File files[], Result results[], int from, int to ) {
+			m_files = files;
+			m_results = results;
+			m_from = from;
+			m_to = to;
+		}
+
+		protected void compute() {
+			if ( m_to - m_from <= BATCH ) {
+				for ( int i=m_from; i<m_to; i++ )
+					m_results[i] = check( m_files[i] );
+				return;
+			}
+			int mid = (m_from + m_to) >>> 1;
+			invokeAll( new CheckTask( m_files, m_results, m_from, mid ),
+					   new CheckTask( m_files, m_results, mid, m_to ) );
+		}
+	}
+
+	// Check a single puzzle file.
+	static Result check( File file ) {
+		Result result = new Result( file.getPath() );
+		long start = System.nanoTime();
+		try {
+			check( file, result );
+		}
+		finally {
+			result.m_micros = (System.nanoTime() - start) / 1000;
+		}
+		return result;
+	}
+
+	private static void check( File file, Result result ) {
+
+		// Parse it...
+		Picture picture = new Picture();
+		Color colors[][];
+		try {
+			URL base = file.getParentFile().toURI().toURL();
+			colors = picture.create( base, file.getName() );
+		}
+		catch ( Exception e ) {
+			result.m_status = BAD_PARSE;
+			result.m_detail = e.toString();
+			return;
+		}
+
+		// ...make sure that every square got a color...
+		if ( picture.unknownColors().size() > 0 ) {
+			result.m_status = BAD_COLOR;
+			result.m_detail = picture.unknownColors().toString();
+			return;
+		}
+		for ( int r=0; r<colors.length; r++ ) {
+			for ( int c=0; c<colors[r].length; c++ ) {
+				if ( colors[r][c] == null ) {
+					result.m_status = BAD_COLOR;
+					result.m_detail = "no color at " + r + "," + c;
+					return;
+				}
+			}
+		}
+
+		// ...build the clues (which can't overflow, with a line any size)...
+		Grid grid = new Grid( colors, false );
+		Keyarray rowKeys = new Keyarray( grid, true );
+		Keyarray colKeys = new Keyarray( grid, false );
+
+		// ...see if the clues are enough to solve it...
+		Solver solver = new Solver( rowKeys, colKeys );
+		int solved = solver.solve();
+		result.m_detail = solver.getPasses() + " passes";
+		if ( solved == Solver.STUCK ) {
+
+			// ...and if not, whether they're enough to pin it down.
+			long searchStart = System.nanoTime();
+			solved = solver.searchUnique( s_searchMillis );
+			result.m_detail += ", searched " +
+				(System.nanoTime() - searchStart) / 1000000 + "ms";
+			result.m_status = ( solved == Solver.SOLVED ) ? UNIQUE :
+				( solved == Solver.MULTIPLE ) ? NOT_UNIQUE :
+				( solved == Solver.STUCK ) ? GAVE_UP : BAD_SOLVE;
+			return;
+		}
+		result.m_status = ( solved == Solver.SOLVED ) ? OK : BAD_SOLVE;
+	}
+
+	// Collect all of the puzzle files at or below a directory.
+	static void findPuzzles( File file, Vector found ) {
+		if ( file.isDirectory() ) {
+			if ( file.getName().equals("CVS") )	return;
+			String names[] = file.list();
+			Arrays.sort( names );
+			for ( int i=0; i<names.length; i++ )
+				findPuzzles( new File(file, names[i]), found );
+		}
+		else if ( file.getName().endsWith(".xbm") ||
+				  file.getName().endsWith(".xpm") ) {
+			found.addElement( file );
+		}
+	}
+
+	public static void main( String args[] ) {
+		Vector found = new Vector();
+		for ( int i=0; i<args.length; i++ ) {
+			if ( args[i].equals("-millis") && i+1 < args.length )
+				s_searchMillis = Long.parseLong( args[++i] );
+			else
+				findPuzzles( new File(args[i]), found );
+		}
+		if ( found.size() == 0 )	findPuzzles( new File("."), found );
+		File files[] = new File[found.size()];
+		found.copyInto( files );
+		Result results[] = new Result[files.length];
+
+		long start = System.nanoTime();
+		ForkJoinPool pool =
+			new ForkJoinPool( Runtime.getRuntime().availableProcessors() );
+		pool.invoke( new CheckTask( files, results, 0, files.length ) );
+		long millis = (System.nanoTime() - start) / 1000000;
+
+		// Report on each file, then the totals.
+		Hashtable counts = new Hashtable();
+		for ( int i=0; i<results.length; i++ ) {
+			System.out.println( results[i] );
+			Integer n = (Integer)counts.get( results[i].m_status );
+			counts.put( results[i].m_status,
+						Integer.valueOf( (n == null) ? 1 : n.intValue()+1 ) );
+		}
+		System.out.println( files.length + " files in " + millis + "ms on " +
+							pool.getParallelism() + " threads: " + counts );
+	}
+}
@@ -0,0 +1,194 @@
+//
+//
+// XbmScanner
+//
+// Reads an .xbm file straight from its bytes, without going through a
+// tokenizer.  The #defines can come in any order (only the ones ending in
+// _width and _height matter), the array can be declared as either
+// "static char" or "static unsigned char", and comments are skipped.
+//
+// The picture comes out as packed bits, one bit per square, row by row.
+// Each row starts on a fresh long, with bit c of the row standing for
+// column c -- the same bit order as the file itself.
+//
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+class XbmScanner
+{
+	// private variables
+	ByteBuffer	m_buf;
+	int			m_pos;
+	int			m_end;
+
+	int			m_width = -1;
+	int			m_height = -1;
+	int			m_wordsPerRow;
+	long		m_bits[];
+
+	// constructor
+	public XbmScanner( ByteBuffer buf ) throws IOException {
+		m_buf = buf;
+		m_pos = buf.position();
+		m_end = buf.limit();
+
+		readDefines();
+		readBits();
+	}
+
+	// methods
+	public int		getWidth()			{ return m_width; }
+	public int		getHeight()			{ return m_height; }
+	public int		getWordsPerRow()	{ return m_wordsPerRow; }
+	public long[]	getBits()			{ return m_bits; }
+
+	public boolean isSet( int row, int col ) {
+		return ( m_bits[row*m_wordsPerRow + (col>>>6)] & (1L << col) ) != 0;
+	}
+
+	// Private methods
+
+	// Read the #defines, up to the opening brace of the array.
+	private void readDefines() throws IOException {
+		int first = -1, second = -1;
+
+		while ( true ) {
+			int ch = skipSpace();
+			if ( ch < 0 )	throw new IOException( "xbm: no bits found" );
+			if ( ch == '{' )	{ m_pos++; break; }
+
+			if ( ch == '#' && matches( "#define" ) ) {
+				m_pos += 7;
+				skipSpace();
+				int nameStart = m_pos;
+				while ( m_pos < m_end && !isSpace( byteAt(m_pos) ) )	m_pos++;
+				int nameEnd = m_pos;
+				skipSpace();
+				int value = readDecimal();
+
+				if		( endsWith( nameStart, nameEnd, "_width" ) )	m_width = value;
+				else if ( endsWith( nameStart, nameEnd, "_height" ) )	m_height = value;
+				else if ( first < 0 )	first = value;
+				else if ( second < 0 )	second = value;
+			}
+			else m_pos++;
+		}
+
+		// Files without the usual names give the width and height first.
+		if ( m_width < 0 )	{ m_width = first; first = second; }
+		if ( m_height < 0 )	m_height = first;
+		if ( m_width <= 0 || m_height <= 0 )
+			throw new IOException( "xbm: no width or height" );
+
+		m_wordsPerRow = (m_width + 63) >>> 6;
+		m_bits = new long[m_height * m_wordsPerRow];
+	}
+
+	// Read the 0xNN literals, dropping each byte into place.
+	private void readBits() throws IOException {
+		int bytesPerRow = (m_width + 7) >>> 3;
+		int numBytes = bytesPerRow * m_height;
+		long lastMask = -1L >>> -( ((m_width - 1) & 63) + 1 );
+
+		for ( int n=0; n<numBytes; n++ ) {
+			int ch = skipSpace();
+			if ( ch == ',' ) {
+				m_pos++;
+				ch = skipSpace();
+			}
+			if ( ch != '0' || m_pos+1 >= m_end ||
+				 (byteAt(m_pos+1) | 0x20) != 'x' )
+				throw new IOException( "xbm: expected " + numBytes +
+									   " bytes, found " + n );
+			m_pos += 2;
+
+			int x = 0, digits = 0;
+			while ( m_pos < m_end ) {
+				int d = hexValue( byteAt(m_pos) );
+				if ( d < 0 )	break;
+				x = (x << 4) | d;
+				digits++;
+				m_pos++;
+			}
+			if ( digits == 0 )	throw new IOException( "xbm: bad hex number" );
+
+			int row = n / bytesPerRow;
+			int col = n - row*bytesPerRow;
+			m_bits[row*m_wordsPerRow + (col>>>3)] |=
+				(long)(x & 0xff) << ((col & 7) << 3);
+		}
+
+		// Clear any padding bits past the end of each row.
+		for ( int r=0; r<m_height; r++ )
+			m_bits[r*m_wordsPerRow + m_wordsPerRow-1] &= lastMask;
+	}
+
+	// Skip white space and comments, returning the next byte (or -1).
+	private int skipSpace() {
+		while ( m_pos < m_end ) {
+			int ch = byteAt( m_pos );
+			if ( isSpace(ch) ) {
+				m_pos++;
+			}
+			else if ( ch == '/' && m_pos+1 < m_end && byteAt(m_pos+1) == '*' ) {
+				m_pos += 2;
+				while ( m_pos+1 < m_end &&
+						!(byteAt(m_pos) == '*' && byteAt(m_pos+1) == '/') )
+					m_pos++;
+				m_pos += 2;
+			}
+			else if ( ch == '/' && m_pos+1 < m_end && byteAt(m_pos+1) == '/' ) {
+				while ( m_pos < m_end && byteAt(m_pos) != '\n' )	m_pos++;
+			}
+			else return ch;
+		}
+		return -1;
+	}
+
+	private int readDecimal() throws IOException {
+		int value = 0, digits = 0, sign = 1;
+		if ( m_pos < m_end && byteAt(m_pos) == '-' ) {
+			sign = -1;
+			m_pos++;
+		}
+		while ( m_pos < m_end ) {
+			int ch = byteAt( m_pos );
+			if ( ch < '0' || ch > '9' )	break;
+			value = value*10 + (ch - '0');
+			digits++;
+			m_pos++;
+		}
+		if ( digits == 0 )	throw new IOException( "xbm: bad #define" );
+		return sign * value;
+	}
+
+	private boolean matches( String s ) {
+		if ( m_pos + s.length() > m_end )	return false;
+		for ( int i=0; i<s.length(); i++ ) {
+			if ( byteAt(m_pos+i) != s.charAt(i) )	return false;
+		}
+		return true;
+	}
+
+	private boolean endsWith( int start, int end, String s ) {
+		if ( end - start < s.length() )	return false;
+		for ( int i=0, p=end-s.length(); i<s.length(); i++, p++ ) {
+			if ( byteAt(p) != s.charAt(i) )	return false;
+		}
+		return true;
+	}
+
+	private int byteAt( int p )	{ return m_buf.get(p) & 0xff; }
+
+	private static boolean isSpace( int ch ) {
+		return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\r' ||
+			ch == '\f';
+	}
+
+	private static int hexValue( int ch ) {
+		if ( ch >= '0' && ch <= '9' )	return ch - '0';
+		ch |= 0x20;
+		if ( ch >= 'a' && ch <= 'f' )	return ch - 'a' + 10;
+		return -1;
+	}
+}
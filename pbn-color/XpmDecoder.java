@@ -0,0 +1,313 @@
+//
+//
+// XpmDecoder
+//
+// Reads an .xpm file straight from its bytes.  Any number of colors is
+// allowed (up to 256), given either as #rgb, #rrggbb or #rrrrggggbbbb, or
+// by any of the X11 names (see ColorNames), and each pixel can be any
+// number of characters wide (up to 8).
+//
+// The picture comes out as a palette plus one palette index per square,
+// row by row.  Pixels are looked up through a table indexed directly by
+// their characters, so decoding doesn't allocate anything per pixel.
+//
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Vector;
+
+class XpmDecoder
+{
+	// the most characters per pixel that we can pack into a long
+	static final int MAX_CHARS_PER_PIXEL = 8;
+
+	// Light gray is what the grid shows for squares not yet guessed (see
+	// Grid.UNSET), so a square that is meant to be light gray gets this,
+	// a shade off it, instead.
+	static final Color	LIGHT_GRAY = new Color( 0xc0, 0xc0, 0xbf );
+
+	// The standard colors, by name.  These come first, as Java's own color
+	// objects, even where X11 has a different idea of the color (its gray,
+	// for one, is lighter), so that older puzzles look as they always did.
+	static final String	s_names[] = {
+		"white", "black", "red", "green", "blue", "yellow", "cyan",
+		"magenta", "orange", "pink", "gray", "grey", "lightgray",
+		"lightgrey", "darkgray", "darkgrey", "none",
+	};
+	static final Color	s_colors[] = {
+		Color.white, Color.black, Color.red, Color.green, Color.blue,
+		Color.yellow, Color.cyan, Color.magenta, Color.orange, Color.pink,
+		Color.gray, Color.gray, LIGHT_GRAY, LIGHT_GRAY,
+		Color.darkGray, Color.darkGray, Color.white,	// background
+	};
+
+	// private variables
+	ByteBuffer	m_buf;
+	int			m_pos;
+	int			m_end;
+
+	int			m_width;
+	int			m_height;
+	int			m_numColors;
+	int			m_charsPerPixel;
+
+	Color		m_palette[];
+	String		m_colorNames[];	// as given in the file
+	byte		m_pixels[];		// palette indexes, row by row
+	Vector		m_unknownColors = new Vector();
+
+	// Direct lookup, for one or two characters per pixel...
+	short		m_table[];
+	// ...or open hashing on the packed characters, for more.
+	long		m_keys[];
+	short		m_values[];
+
+	// constructor
+	public XpmDecoder( ByteBuffer buf ) throws IOException {
+		m_buf = buf;
+		m_pos = buf.position();
+		m_end = buf.limit();
+
+		readValues();
+		readColors();
+		readPixels();
+	}
+
+	// methods
+	public int		getWidth()				{ return m_width; }
+	public int		getHeight()				{ return m_height; }
+	public int		getNumColors()			{ return m_numColors; }
+	public Color	getPaletteColor( int k ) { return m_palette[k]; }
+	public String	getColorName( int k )	{ return m_colorNames[k]; }
+	public byte[]	getPixels()				{ return m_pixels; }
+	public Vector	unknownColors()			{ return m_unknownColors; }
+
+	// The color of one square (null if its color was unknown).
+	public Color getColor( int row, int col ) {
+		return m_palette[ m_pixels[row*m_width + col] & 0xff ];
+	}
+
+	// Turn a color spec from an .xpm file into a Color.  Returns null if
+	// it isn't one we understand.  Colors that match one of the standard
+	// ones come back as that very object, since the rest of the program
+	// compares colors with ==.
+	public static Color decodeColor( String spec ) {
+		if ( spec.startsWith("#") ) {
+			int digits = (spec.length() - 1) / 3;
+			if ( digits < 1 || digits > 4 || spec.length() != 1 + 3*digits )
+				return null;
+			int rgb = 0;
+			for ( int i=0; i<3; i++ ) {
+				int v;
+				try {
+					v = Integer.parseInt( spec.substring(1 + i*digits,
+														1 + (i+1)*digits), 16 );
+				}
+				catch ( NumberFormatException e ) { return null; }
+				if		( digits == 1 )	v *= 17;
+				else if ( digits == 3 )	v >>= 4;
+				else if ( digits == 4 )	v >>= 8;
+				rgb = (rgb << 8) | v;
+			}
+			return canonical( new Color(rgb) );
+		}
+
+		String name = spec.toLowerCase().replace( " ", "" );
+		for ( int i=0; i<s_names.length; i++ ) {
+			if ( s_names[i].equals(name) )	return s_colors[i];
+		}
+		int rgb = ColorNames.lookup( name );
+		return ( rgb < 0 ) ? null : canonical( new Color(rgb) );
+	}
+
+	// Swap a color for the standard one with the same value, if there is one.
+	// Light gray itself is never a puzzle color; it becomes LIGHT_GRAY.
+	static Color canonical( Color color ) {
+		if ( Color.lightGray.equals(color) )	return LIGHT_GRAY;
+		for ( int i=0; i<s_colors.length; i++ ) {
+			if ( s_colors[i].equals(color) )	return s_colors[i];
+		}
+		return color;
+	}
+
+	// Private methods
+
+	// The first string holds the width, height, colors and chars per pixel.
+	private void readValues() throws IOException {
+		int start = nextString();
+		int end = stringEnd( start );
+		int values[] = new int[4];
+		int n = 0;
+		for ( int p=start; p<end && n<4; ) {
+			while ( p < end && (byteAt(p) == ' ' || byteAt(p) == '\t') )	p++;
+			if ( p == end )	break;
+			int v = 0, digits = 0;
+			while ( p < end && byteAt(p) >= '0' && byteAt(p) <= '9' ) {
+				v = v*10 + byteAt(p) - '0';
+				digits++;
+				p++;
+			}
+			if ( digits == 0 )	throw new IOException( "xpm: bad values line" );
+			values[n++] = v;
+		}
+		if ( n < 4 )	throw new IOException( "xpm: bad values line" );
+
+		m_width = values[0];
+		m_height = values[1];
+		m_numColors = values[2];
+		m_charsPerPixel = values[3];
+		if ( m_width <= 0 || m_height <= 0 || m_numColors <= 0 )
+			throw new IOException( "xpm: bad size" );
+		if ( m_numColors > 256 )
+			throw new IOException( "xpm: more than 256 colors" );
+		if ( m_charsPerPixel < 1 || m_charsPerPixel > MAX_CHARS_PER_PIXEL )
+			throw new IOException( "xpm: can't handle " + m_charsPerPixel +
+								   " chars per pixel" );
+	}
+
+	// Then one string per color: the pixel characters, then pairs of
+	// keys and values.  We use the "c" value, or failing that, the
+	// first one given.
+	private void readColors() throws IOException {
+		m_palette = new Color[m_numColors];
+		m_colorNames = new String[m_numColors];
+		if ( m_charsPerPixel <= 2 ) {
+			m_table = new short[ 1 << (8*m_charsPerPixel) ];
+			java.util.Arrays.fill( m_table, (short)-1 );
+		}
+		else {
+			int size = Integer.highestOneBit( m_numColors*2 - 1 ) * 2;
+			m_keys = new long[size];
+			m_values = new short[size];
+			java.util.Arrays.fill( m_values, (short)-1 );
+		}
+
+		for ( int k=0; k<m_numColors; k++ ) {
+			int start = nextString();
+			int end = stringEnd( start );
+			if ( end - start < m_charsPerPixel )
+				throw new IOException( "xpm: bad color line" );
+			long key = pack( start );
+
+			// Split the rest into words, and find the color we want.
+			String words[] = new String( bytes(start + m_charsPerPixel, end),
+										 "ISO-8859-1" ).trim().split( "\\s+" );
+			String spec = null;
+			for ( int i=0; i+1<words.length; i+=2 ) {
+				if ( words[i].equals("c") ) {
+					// names like "light gray" can run over several words
+					spec = words[i+1];
+					for ( int j=i+2; j<words.length && !isKey(words[j]); j++ )
+						spec += " " + words[j];
+					break;
+				}
+			}
+			if ( spec == null && words.length >= 2 )	spec = words[1];
+			if ( spec == null )	throw new IOException( "xpm: bad color line" );
+
+			m_colorNames[k] = spec;
+			m_palette[k] = decodeColor( spec );
+			if ( m_palette[k] == null )	m_unknownColors.addElement( spec );
+			put( key, k );
+		}
+	}
+
+	// Then one string per row of pixels.
+	private void readPixels() throws IOException {
+		m_pixels = new byte[m_width * m_height];
+		int cpp = m_charsPerPixel;
+
+		for ( int r=0, i=0; r<m_height; r++ ) {
+			int p = nextString();
+			if ( stringEnd(p) - p < m_width*cpp )
+				throw new IOException( "xpm: row " + r + " is too short" );
+
+			for ( int c=0; c<m_width; c++, i++, p+=cpp ) {
+				int k;
+				if		( cpp == 1 )	k = m_table[ byteAt(p) ];
+				else if ( cpp == 2 )	k = m_table[ (byteAt(p) << 8) | byteAt(p+1) ];
+				else					k = get( pack(p) );
+				if ( k < 0 )
+					throw new IOException( "xpm: undefined pixel at " + r +
+										   "," + c );
+				m_pixels[i] = (byte)k;
+			}
+		}
+	}
+
+	// Pack the characters of the pixel starting at p into a long.
+	private long pack( int p ) {
+		long key = 0;
+		for ( int i=0; i<m_charsPerPixel; i++ )
+			key = (key << 8) | byteAt(p+i);
+		return key;
+	}
+
+	private void put( long key, int k ) {
+		if ( m_table != null ) {
+			m_table[(int)key] = (short)k;
+			return;
+		}
+		int mask = m_keys.length - 1;
+		int h = hash( key ) & mask;
+		while ( m_values[h] >= 0 && m_keys[h] != key )	h = (h+1) & mask;
+		m_keys[h] = key;
+		m_values[h] = (short)k;
+	}
+
+	private int get( long key ) {
+		int mask = m_keys.length - 1;
+		int h = hash( key ) & mask;
+		while ( m_values[h] >= 0 ) {
+			if ( m_keys[h] == key )	return m_values[h];
+			h = (h+1) & mask;
+		}
+		return -1;
+	}
+
+	private static int hash( long key ) {
+		key *= 0x9E3779B97F4A7C15L;
+		return (int)(key >>> 32);
+	}
+
+	private static boolean isKey( String word ) {
+		return word.equals("c") || word.equals("m") || word.equals("s") ||
+			word.equals("g") || word.equals("g4");
+	}
+
+	// Find the start of the next quoted string, skipping comments.
+	private int nextString() throws IOException {
+		while ( m_pos < m_end ) {
+			int ch = byteAt( m_pos );
+			if ( ch == '"' ) {
+				int start = m_pos + 1;
+				m_pos = stringEnd( start ) + 1;
+				return start;
+			}
+			if ( ch == '/' && m_pos+1 < m_end && byteAt(m_pos+1) == '*' ) {
+				m_pos += 2;
+				while ( m_pos+1 < m_end &&
+						!(byteAt(m_pos) == '*' && byteAt(m_pos+1) == '/') )
+					m_pos++;
+				m_pos += 2;
+			}
+			else m_pos++;
+		}
+		throw new IOException( "xpm: unexpected end of file" );
+	}
+
+	// Find the closing quote of the string that starts at p.
+	private int stringEnd( int p ) throws IOException {
+		while ( p < m_end && byteAt(p) != '"' )	p++;
+		if ( p == m_end )	throw new IOException( "xpm: unterminated string" );
+		return p;
+	}
+
+	private byte[] bytes( int start, int end ) {
+		byte b[] = new byte[end - start];
+		for ( int i=0; i<b.length; i++ )	b[i] = m_buf.get( start+i );
+		return b;
+	}
+
+	private int byteAt( int p )	{ return m_buf.get(p) & 0xff; }
+}